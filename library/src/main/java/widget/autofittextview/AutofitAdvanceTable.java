@@ -0,0 +1,289 @@
+package widget.autofittextview;
+
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.LruCache;
+import android.util.SparseIntArray;
+
+/**
+ * Glyph advances of one typeface, measured once at a reference size and scaled. For CJK text and
+ * ASCII text in a monospace typeface the advances don't depend on the neighbouring glyphs, so
+ * line breaks and line widths at any size can be predicted by adding advances up, without
+ * building a layout.
+ *
+ * <p>Tables are shared by every view using the same typeface and may be used from several
+ * threads at once.
+ */
+final class AutofitAdvanceTable {
+    private static final int MAX_TABLES = 16;
+    private static final float REFERENCE_SIZE = 100f;
+
+    private static final int SCRIPT_MIXED = 0;
+    private static final int SCRIPT_CJK = 1;
+    private static final int SCRIPT_ASCII = 2;
+
+    private static final LruCache<Key, AutofitAdvanceTable> sTables =
+            new LruCache<Key, AutofitAdvanceTable>(MAX_TABLES);
+
+    private final TextPaint mPaint = new TextPaint();
+    // Advance at the reference size per code point, as float bits
+    private final SparseIntArray mAdvances = new SparseIntArray();
+    private final boolean mMonospace;
+
+    private AutofitAdvanceTable(TextPaint paint) {
+        mPaint.set(paint);
+        mPaint.setTextSize(REFERENCE_SIZE);
+        mMonospace = getAdvance('i') == getAdvance('W') && getAdvance('i') == getAdvance(' ');
+    }
+
+    /**
+     * Returns the table for the typeface and scaling of {@code paint}.
+     *
+     * @param lookupKey reused across calls by the same caller, so that hits don't allocate.
+     */
+    static AutofitAdvanceTable get(TextPaint paint, Key lookupKey) {
+        lookupKey.set(paint);
+        AutofitAdvanceTable table = sTables.get(lookupKey);
+        if (table == null) {
+            table = new AutofitAdvanceTable(paint);
+            sTables.put(new Key(lookupKey), table);
+        }
+        return table;
+    }
+
+    /**
+     * 纯 CJK 文本，或等宽字体下的纯 ASCII 文本才能预测，混合文字时返回 false
+     */
+    boolean canPredict(CharSequence text) {
+        int script = getScript(text);
+        return script == SCRIPT_CJK || (script == SCRIPT_ASCII && mMonospace);
+    }
+
+    /**
+     * Returns whether {@code text} is CJK text, which may break after any character.
+     */
+    static boolean isCjkText(CharSequence text) {
+        return getScript(text) == SCRIPT_CJK;
+    }
+
+    /**
+     * Returns the width of {@code text} between {@code start} and {@code end} on one line.
+     */
+    float measure(CharSequence text, int start, int end, float size) {
+        float width = 0;
+        for (int i = start; i < end; i++) {
+            width += getAdvance(text.charAt(i));
+        }
+        return width * size / REFERENCE_SIZE;
+    }
+
+    /**
+     * 模拟贪心换行：CJK 文本每个字符后都可以换行（避头尾：标点不出现在行首，开括号不出现在行尾），
+     * ASCII 文本在空格处换行，单词超过一行时从中间断开
+     *
+     * @param outMaxLineWidth its first element is raised to the width of the widest line.
+     * @return the number of lines the paragraph between {@code start} and {@code end} takes.
+     */
+    int breakParagraph(CharSequence text, int start, int end, float size, float targetWidth,
+            boolean breakAnywhere, float[] outMaxLineWidth) {
+        float scale = size / REFERENCE_SIZE;
+        int lines = 1;
+        // Width of the current line with and without its trailing spaces
+        float lineWidth = 0;
+        float visibleWidth = 0;
+
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                // Trailing spaces hang past the line end and never cause a break
+                lineWidth += getAdvance(c) * scale;
+                i++;
+                continue;
+            }
+
+            int wordEnd = i + 1;
+            if (breakAnywhere) {
+                while (wordEnd < end && (isNoBreakAfter(text.charAt(wordEnd - 1))
+                        || isNoBreakBefore(text.charAt(wordEnd)))) {
+                    wordEnd++;
+                }
+            } else {
+                while (wordEnd < end && text.charAt(wordEnd) != ' ') {
+                    wordEnd++;
+                }
+            }
+            float wordWidth = measure(text, i, wordEnd, size);
+            if (lineWidth + wordWidth <= targetWidth) {
+                lineWidth += wordWidth;
+                visibleWidth = lineWidth;
+            } else {
+                if (visibleWidth > 0) {
+                    outMaxLineWidth[0] = Math.max(outMaxLineWidth[0], visibleWidth);
+                    lines++;
+                }
+                lineWidth = 0;
+                for (int j = i; j < wordEnd; j++) {
+                    float advance = getAdvance(text.charAt(j)) * scale;
+                    if (lineWidth + advance > targetWidth && lineWidth > 0) {
+                        outMaxLineWidth[0] = Math.max(outMaxLineWidth[0], lineWidth);
+                        lines++;
+                        lineWidth = 0;
+                    }
+                    lineWidth += advance;
+                }
+                visibleWidth = lineWidth;
+            }
+            i = wordEnd;
+        }
+        outMaxLineWidth[0] = Math.max(outMaxLineWidth[0], visibleWidth);
+        return lines;
+    }
+
+    private synchronized float getAdvance(char c) {
+        int index = mAdvances.indexOfKey(c);
+        if (index >= 0) {
+            return Float.intBitsToFloat(mAdvances.valueAt(index));
+        }
+        float advance = mPaint.measureText(String.valueOf(c));
+        mAdvances.put(c, Float.floatToIntBits(advance));
+        return advance;
+    }
+
+    private static int getScript(CharSequence text) {
+        int script = SCRIPT_MIXED;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int charScript;
+            if (c == '\n') {
+                continue;
+            } else if (c >= 0x20 && c <= 0x7e) {
+                charScript = SCRIPT_ASCII;
+            } else if (isCjk(c)) {
+                charScript = SCRIPT_CJK;
+            } else {
+                // Surrogates, combining marks and other scripts shape with their neighbours
+                return SCRIPT_MIXED;
+            }
+            if (script != SCRIPT_MIXED && script != charScript) {
+                return SCRIPT_MIXED;
+            }
+            script = charScript;
+        }
+        return script;
+    }
+
+    // Closing brackets and punctuation, which the line breaker keeps off the start of a line
+    private static boolean isNoBreakBefore(char c) {
+        switch (c) {
+            case '\u3001': // 、
+            case '\u3002': // 。
+            case '\u3009': // 〉
+            case '\u300b': // 》
+            case '\u300d': // 」
+            case '\u300f': // 』
+            case '\u3011': // 】
+            case '\u3015': // 〕
+            case '\u3017': // 〗
+            case '\u3019': // 〙
+            case '\u301b': // 〛
+            case '\u301e': // 〞
+            case '\u301f': // 〟
+            case '\uff01': // ！
+            case '\uff09': // ）
+            case '\uff0c': // ，
+            case '\uff0e': // ．
+            case '\uff1a': // ：
+            case '\uff1b': // ；
+            case '\uff1f': // ？
+            case '\uff3d': // ］
+            case '\uff5d': // ｝
+            case '\uff61': // ｡
+            case '\uff63': // ｣
+            case '\uff64': // ､
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Opening brackets, which the line breaker keeps off the end of a line
+    private static boolean isNoBreakAfter(char c) {
+        switch (c) {
+            case '\u3008': // 〈
+            case '\u300a': // 《
+            case '\u300c': // 「
+            case '\u300e': // 『
+            case '\u3010': // 【
+            case '\u3014': // 〔
+            case '\u3016': // 〖
+            case '\u3018': // 〘
+            case '\u301a': // 〚
+            case '\u301d': // 〝
+            case '\uff08': // （
+            case '\uff3b': // ［
+            case '\uff5b': // ｛
+            case '\uff62': // ｢
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x3000 && c <= 0x30ff)     // CJK punctuation, kana
+                || (c >= 0x3400 && c <= 0x4dbf) // CJK extension A
+                || (c >= 0x4e00 && c <= 0x9fff) // CJK unified ideographs
+                || (c >= 0xac00 && c <= 0xd7af) // Hangul syllables
+                || (c >= 0xf900 && c <= 0xfaff) // CJK compatibility ideographs
+                || (c >= 0xff00 && c <= 0xffef); // Fullwidth forms
+    }
+
+    static final class Key {
+        private Typeface mTypeface;
+        private float mTextScaleX;
+        private float mLetterSpacing;
+        private int mFlags;
+
+        Key() {
+        }
+
+        private Key(Key key) {
+            mTypeface = key.mTypeface;
+            mTextScaleX = key.mTextScaleX;
+            mLetterSpacing = key.mLetterSpacing;
+            mFlags = key.mFlags;
+        }
+
+        private void set(TextPaint paint) {
+            mTypeface = paint.getTypeface();
+            mTextScaleX = paint.getTextScaleX();
+            mLetterSpacing = paint.getLetterSpacing();
+            mFlags = paint.getFlags();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mTypeface == key.mTypeface
+                    && mTextScaleX == key.mTextScaleX
+                    && mLetterSpacing == key.mLetterSpacing
+                    && mFlags == key.mFlags;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mTypeface != null ? mTypeface.hashCode() : 0;
+            result = 31 * result + Float.floatToIntBits(mTextScaleX);
+            result = 31 * result + Float.floatToIntBits(mLetterSpacing);
+            result = 31 * result + mFlags;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package widget.autofittextview;
+
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+
+/**
+ * The sizes at which the line count of a text changes, for one (text, width) pair. The line
+ * count only goes down as the size goes down, so for each line count {@code k} there is a
+ * largest size at which the text takes at most {@code k} lines. Between two of those sizes the
+ * line count doesn't change, even though the line breaks may move, so the height at a size only
+ * depends on the font metrics.
+ *
+ * <p>A fit for another {@code maxLines} or height is answered from the sizes already found plus
+ * at most one search per line count not seen yet. Each search is bracketed by what earlier
+ * searches found.
+ */
+final class AutofitBreakpointIndex {
+    private static final float UNKNOWN = -1f;
+
+    // Per line count k: the largest size at which the text takes at most k lines (0 if it takes
+    // more at every size, UNKNOWN if not searched yet), the line count and widest line there, and
+    // the smallest size seen at which the text takes more than k lines
+    private float[] mFits = newUnknown(8);
+    private int[] mFitLines = new int[8];
+    private float[] mFitWidths = new float[8];
+    private float[] mOverflows = new float[8];
+    private boolean mEmpty = true;
+
+    // What the index was built for
+    private int mGeneration;
+    private int mWidth;
+    private float mMaxTextSize;
+    private float mPrecision;
+    private Typeface mTypeface;
+    private float mTextScaleX;
+    private float mLetterSpacing;
+    private int mFlags;
+
+    /**
+     * Returns whether this index was built for the given text, width and paint.
+     */
+    boolean isFor(AutofitMeasuredText text, int width, TextPaint paint, float maxTextSize,
+            float precision) {
+        return !mEmpty
+                && mGeneration == text.getGeneration()
+                && mWidth == width
+                && mMaxTextSize == maxTextSize
+                && mPrecision == precision
+                && mTypeface == paint.getTypeface()
+                && mTextScaleX == paint.getTextScaleX()
+                && mLetterSpacing == paint.getLetterSpacing()
+                && mFlags == paint.getFlags();
+    }
+
+    /**
+     * Drops the index and starts a new one for the given text, width and paint.
+     */
+    void reset(AutofitMeasuredText text, int width, TextPaint paint, float maxTextSize,
+            float precision) {
+        Arrays.fill(mFits, UNKNOWN);
+        mEmpty = false;
+        mGeneration = text.getGeneration();
+        mWidth = width;
+        mMaxTextSize = maxTextSize;
+        mPrecision = precision;
+        mTypeface = paint.getTypeface();
+        mTextScaleX = paint.getTextScaleX();
+        mLetterSpacing = paint.getLetterSpacing();
+        mFlags = paint.getFlags();
+    }
+
+    /**
+     * 在索引中查找能放下文本的最大字号：先取行数不超过 maxLines 的最大字号，高度放不下时在同一行数的区间内
+     * 按字体度量二分，整个区间都放不下时换到少一行的区间
+     *
+     * @return the largest size at which the text fits, 0 if it fits at none, or -1 if a line
+     * doesn't wrap within the width and the regular search has to decide.
+     */
+    float query(AutofitProbe probe, int adaptDirection, int maxLines, float targetWidth,
+            float targetHeight) {
+        int k = maxLines;
+        while (k > 0) {
+            float high = getFit(probe, k);
+            if (high <= 0) {
+                return 0;
+            }
+            int lines = mFitLines[k];
+            if (adaptDirection != AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT
+                    && mFitWidths[k] > targetWidth) {
+                return -1;
+            }
+            if (adaptDirection == AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH
+                    || probe.getHeight(high, lines) <= targetHeight) {
+                return high;
+            }
+
+            // The text keeps this many lines down to the size at which it takes one less
+            float low = mPrecision;
+            if (lines > 1) {
+                getFit(probe, lines - 1);
+                low = mOverflows[lines - 1];
+            }
+            if (probe.getHeight(low, lines) > targetHeight) {
+                k = lines - 1;
+                continue;
+            }
+            float hi = high;
+            float lo = low;
+            while (hi - lo >= mPrecision) {
+                float mid = (lo + hi) / 2.0f;
+                if (probe.getHeight(mid, lines) > targetHeight) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            return lo;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the largest size at which the text takes at most {@code k} lines, searching for
+     * it between the sizes known to fit and to overflow {@code k} lines if not found yet.
+     */
+    private float getFit(AutofitProbe probe, int k) {
+        ensureCapacity(k + 1);
+        if (mFits[k] != UNKNOWN) {
+            return mFits[k];
+        }
+
+        float lo = 0;
+        int loLines = 0;
+        float loWidth = 0;
+        float hi = Float.POSITIVE_INFINITY;
+        for (int i = 1; i < mFits.length; i++) {
+            if (mFits[i] == UNKNOWN) {
+                continue;
+            }
+            if (mFits[i] > lo && mFitLines[i] <= k) {
+                lo = mFits[i];
+                loLines = mFitLines[i];
+                loWidth = mFitWidths[i];
+            }
+            if (i >= k && mOverflows[i] < hi) {
+                hi = mOverflows[i];
+            }
+        }
+
+        if (lo >= mMaxTextSize) {
+            return setFit(k, lo, loLines, loWidth, Float.POSITIVE_INFINITY);
+        }
+        if (hi == Float.POSITIVE_INFINITY) {
+            int lines = probe.getLineCount(mMaxTextSize);
+            if (lines <= k) {
+                return setFit(k, mMaxTextSize, lines, probe.getMaxLineWidth(),
+                        Float.POSITIVE_INFINITY);
+            }
+            hi = mMaxTextSize;
+        }
+        if (lo == 0) {
+            int lines = probe.getLineCount(mPrecision);
+            if (lines > k) {
+                return setFit(k, 0, lines, probe.getMaxLineWidth(), mPrecision);
+            }
+            lo = mPrecision;
+            loLines = lines;
+            loWidth = probe.getMaxLineWidth();
+        }
+
+        // lines(lo) <= k < lines(hi)
+        while (hi - lo >= mPrecision) {
+            float mid = (lo + hi) / 2.0f;
+            int lines = probe.getLineCount(mid);
+            if (lines <= k) {
+                lo = mid;
+                loLines = lines;
+                loWidth = probe.getMaxLineWidth();
+            } else {
+                hi = mid;
+            }
+        }
+        return setFit(k, lo, loLines, loWidth, hi);
+    }
+
+    private float setFit(int k, float size, int lines, float width, float overflow) {
+        mFits[k] = size;
+        mFitLines[k] = lines;
+        mFitWidths[k] = width;
+        mOverflows[k] = overflow;
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mFits.length) {
+            return;
+        }
+        capacity = Math.max(capacity, mFits.length * 2);
+        float[] fits = newUnknown(capacity);
+        System.arraycopy(mFits, 0, fits, 0, mFits.length);
+        mFits = fits;
+        mFitLines = Arrays.copyOf(mFitLines, capacity);
+        mFitWidths = Arrays.copyOf(mFitWidths, capacity);
+        mOverflows = Arrays.copyOf(mOverflows, capacity);
+    }
+
+    private static float[] newUnknown(int capacity) {
+        float[] array = new float[capacity];
+        Arrays.fill(array, UNKNOWN);
+        return array;
+    }
+}
@@ -0,0 +1,63 @@
+package widget.autofittextview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.util.TypedValue;
+
+import java.util.Locale;
+
+/**
+ * Draws the cost of the last fit of a view over the view: direction, probes, layouts, time and
+ * whether a cache answered it. Only created once an overlay is turned on.
+ */
+final class AutofitDebugOverlay {
+    private static final int BACKGROUND_COLOR = 0xb0000000;
+    private static final int CACHE_HIT_COLOR = 0xff8bc34a;
+    private static final int CACHE_MISS_COLOR = 0xffffc107;
+    private static final float TEXT_SIZE_DP = 9f;
+    private static final float PADDING_DP = 2f;
+
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBackgroundPaint = new Paint();
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final float mPadding;
+
+    AutofitDebugOverlay(Context context) {
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                TEXT_SIZE_DP, context.getResources().getDisplayMetrics()));
+        mTextPaint.getFontMetrics(mFontMetrics);
+        mBackgroundPaint.setColor(BACKGROUND_COLOR);
+        mPadding = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PADDING_DP,
+                context.getResources().getDisplayMetrics());
+    }
+
+    /**
+     * 在 (left, top) 处绘制最近一次适配的统计信息
+     */
+    void draw(Canvas canvas, float left, float top, AutofitDirectionHelper.FitStats stats) {
+        String text = String.format(Locale.US, "%s p%d l%d %.2fms %s",
+                getDirectionName(stats.getAdaptDirection()), stats.getProbeCount(),
+                stats.getLayoutCount(), stats.getDurationNanos() / 1e6,
+                stats.isCacheHit() ? "hit" : "miss");
+        float width = mTextPaint.measureText(text);
+        float height = mFontMetrics.descent - mFontMetrics.ascent;
+
+        canvas.drawRect(left, top, left + width + 2 * mPadding, top + height + 2 * mPadding,
+                mBackgroundPaint);
+        mTextPaint.setColor(stats.isCacheHit() ? CACHE_HIT_COLOR : CACHE_MISS_COLOR);
+        canvas.drawText(text, left + mPadding, top + mPadding - mFontMetrics.ascent, mTextPaint);
+    }
+
+    private static String getDirectionName(int adaptDirection) {
+        switch (adaptDirection) {
+            case AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT:
+                return "H";
+            case AutofitDirectionHelper.ADAPT_DIRECTION_BOTH:
+                return "WH";
+            default:
+                return "W";
+        }
+    }
+}
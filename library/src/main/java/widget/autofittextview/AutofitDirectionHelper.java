@@ -4,22 +4,30 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.os.Build;
 import android.text.Editable;
-import android.text.Layout;
 import android.text.StaticLayout;
 import android.text.TextPaint;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.method.SingleLineTransformationMethod;
 import android.text.method.TransformationMethod;
 import android.util.AttributeSet;
-import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import me.grantland.widget.R;
 
@@ -31,21 +39,35 @@ import me.grantland.widget.R;
  * @attr ref R.styleable.AutofitDirectionTextView_minTextSize
  * @attr ref R.styleable.AutofitDirectionTextView_precision
  * @attr ref R.styleable.AutofitDirectionTextView_adaptDirection
+ * @attr ref R.styleable.AutofitDirectionTextView_ellipsizeFallback
  *
- * 不设置 maxline 时不进行自适应
+ * 不设置 maxline 时不进行自适应（开启 autoMaxLines 时除外）
  */
 public class AutofitDirectionHelper {
     private static final String TAG = "whh";
-    private static final boolean SPEW = true;
+    private static final boolean SPEW = false;
 
     // Minimum size of the text in pixels
     private static final int DEFAULT_MIN_TEXT_SIZE = 10; //sp
     // How precise we want to be when reaching the target textWidth size
     private static final float DEFAULT_PRECISION = 0.5f;
+    // Upper bound of candidate sizes probed at once by the k-ary search
+    private static final int MAX_SEARCH_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // How much coarser tracked fits are while a settle fit is pending
+    private static final float RESIZE_TRACKING_PRECISION_FACTOR = 4f;
+    // Appended to the text when it is truncated by the ellipsize fallback
+    private static final String ELLIPSIS = "\u2026";
+
+    // Measured to tell typefaces apart in getFitConfigHash(), the style alone doesn't name a family
+    private static final String TYPEFACE_PROBE_TEXT = "AaBbGgIiMmWw0123456789";
+    private static final float TYPEFACE_PROBE_SIZE = 100f;
 
     public static final int ADAPT_DIRECTION_WIDTH = 0;
     public static final int ADAPT_DIRECTION_HEIGHT = 1;
     public static final int ADAPT_DIRECTION_BOTH = 2;
+
+    private static ExecutorService sSearchExecutor;
+
     /**
      * Creates a new instance of {@code AutofitHelper} that wraps a {@link TextView} and enables
      * automatically sizing the text to fit.
@@ -70,6 +92,8 @@ public class AutofitDirectionHelper {
         AutofitDirectionHelper helper = new AutofitDirectionHelper(view);
         boolean sizeToFit = true;
         int adaptDirection = ADAPT_DIRECTION_WIDTH;
+        boolean ellipsizeFallback = false;
+        boolean autoMaxLines = false;
         if (attrs != null) {
             Context context = view.getContext();
             int minTextSize = (int) helper.getMinTextSize();
@@ -82,11 +106,17 @@ public class AutofitDirectionHelper {
                     minTextSize);
             precision = ta.getFloat(R.styleable.AutofitDirectionTextView_precision, precision);
             adaptDirection = ta.getInt(R.styleable.AutofitDirectionTextView_adaptDirection, adaptDirection);
+            ellipsizeFallback = ta.getBoolean(R.styleable.AutofitDirectionTextView_ellipsizeFallback,
+                    ellipsizeFallback);
+            autoMaxLines = ta.getBoolean(R.styleable.AutofitDirectionTextView_autoMaxLines,
+                    autoMaxLines);
             ta.recycle();
 
             helper.setMinTextSize(TypedValue.COMPLEX_UNIT_PX, minTextSize)
                     .setPrecision(precision)
-                    .setAdaptDirection(adaptDirection);
+                    .setAdaptDirection(adaptDirection)
+                    .setEllipsizeFallback(ellipsizeFallback)
+                    .setAutoMaxLines(autoMaxLines);
         }
         helper.setEnabled(sizeToFit);
 
@@ -94,201 +124,427 @@ public class AutofitDirectionHelper {
     }
 
     /**
-     * Re-sizes the textSize of the TextView so that the text fits within the bounds of the View.
+     * 预热：在启动阶段从后台线程调用，提前加载字体、填充形状和测量缓存，并让搜索路径得到 JIT 编译，
+     * 首屏的第一次自适应不再承担冷启动开销
+     *
+     * <p>Every text is fitted in every typeface like a single-line width fit and a multi-line fit
+     * within {@code width} x {@code height}. The single-line results go into the width cache, so
+     * views showing the same text in the same typeface start with a cache hit. Safe to call from
+     * any thread, it doesn't touch any view.
+     *
+     * @param textSize the max text size of the views, in pixels.
      */
-    private static void autofit(TextView view, TextPaint textPaint, float minTextSize, float maxTextSize,
-            int maxLines, float precision, int adaptDirection) {
+    public static void prewarm(Context context, Typeface[] typefaces, CharSequence[] texts,
+            float textSize, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        // Same flags and density as the paint of a TextView, so the cache keys match
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.density = context.getResources().getDisplayMetrics().density;
+        AutofitMeasuredText measuredText = new AutofitMeasuredText();
+        AutofitProbe[] probes = new AutofitProbe[] { new AutofitProbe() };
+        AutofitProbe probe = probes[0];
+        AutofitAdvanceTable.Key advanceTableKey = new AutofitAdvanceTable.Key();
+        AutofitWidthCache.Lookup widthCacheLookup = new AutofitWidthCache.Lookup();
+
+        for (Typeface typeface : typefaces) {
+            paint.setTypeface(typeface);
+            AutofitAdvanceTable advances = AutofitAdvanceTable.get(paint, advanceTableKey);
+            for (CharSequence text : texts) {
+                measuredText.set(text, null, null);
+                CharSequence probeText = measuredText.getProbeText();
+
+                probe.set(measuredText, paint, width, height, 1);
+                float size = getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, 0,
+                        textSize, DEFAULT_PRECISION);
+                if (!measuredText.hasMetricAffectingSpans()) {
+                    AutofitWidthCache.put(widthCacheLookup, probeText.toString(), paint, width,
+                            size);
+                }
+
+                probe.set(measuredText, paint, width, height, 2);
+                size = Math.min(
+                        getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, 0, textSize,
+                                DEFAULT_PRECISION),
+                        getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_HEIGHT, 0, textSize,
+                                DEFAULT_PRECISION));
+                probe.getLineCount(size);
+                probe.getLayout(size);
+                if (!measuredText.hasMetricAffectingSpans() && advances.canPredict(probeText)) {
+                    probe.setAdvanceTable(advances);
+                    getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, 0, textSize,
+                            DEFAULT_PRECISION);
+                    probe.setAdvanceTable(null);
+                }
+            }
+        }
+        probe.clear();
+        measuredText.invalidate();
+    }
+
+    /**
+     * Finds the textSize at which the text fits within the bounds of the View.
+     *
+     * @return the fitted size, not yet clamped to the minimum text size, or -1 if the text isn't
+     * auto-sized.
+     */
+    private static float autofit(TextView view, AutofitMeasuredText measuredText,
+            TextPaint textPaint, AutofitProbe[] probes, float maxTextSize, int maxLines,
+            float precision, int adaptDirection) {
         if (maxLines <= 0 || maxLines == Integer.MAX_VALUE) {
             // Don't auto-size since there's no limit on lines.
-            return;
+            return -1;
         }
 
         int targetHeight = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
         int targetWidth = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
         if (targetWidth <= 0 || targetHeight <= 0) {
-            return;
+            return -1;
         }
 
-        CharSequence text = view.getText();
-        TransformationMethod method = view.getTransformationMethod();
-        if (method != null) {
-            text = method.getTransformation(text, view);
-        }
-
-        Context context = view.getContext();
-        Resources r = Resources.getSystem();
-        DisplayMetrics displayMetrics;
-        if (context != null) {
-            r = context.getResources();
-        }
-        displayMetrics = r.getDisplayMetrics();
+        setProbes(view, measuredText, textPaint, probes, maxLines);
 
         float size = maxTextSize;
-        float lineCount = getLineCount(text, textPaint, size, targetWidth, displayMetrics);
-
-        textPaint.set(view.getPaint());
-        textPaint.setTextSize(size);
-        float textWidth = textPaint.measureText(text, 0, text.length());
-        Paint.FontMetrics fm = textPaint.getFontMetrics();
-        float textHeight = fm.descent - fm.ascent;
-        float realTotalHeight = fm.bottom - fm.ascent + (fm.leading + fm.bottom - fm.top) * (lineCount - 1);
+        int lineCount = probes[0].getLineCount(size);
 
         float max = size;
         float min = 0;
         switch (adaptDirection) {
             case ADAPT_DIRECTION_WIDTH:
-                if ((maxLines == 1 && textWidth > targetWidth) || lineCount > maxLines) {
-                    size = getWidthAutofitDirectionTextSize(text, textPaint, targetWidth,
-                            maxLines, min, max, precision, displayMetrics);
+                if (overflowsWidth(measuredText, textPaint, size, lineCount, maxLines, targetWidth)) {
+                    size = getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, min, max,
+                            precision);
                 }
                 break;
             case ADAPT_DIRECTION_HEIGHT:
-                Log.e(TAG, "targetHeight:" + targetHeight + ",textHeight:" + textHeight + ",linecount:" + lineCount);
+                if (SPEW) Log.e(TAG, "targetHeight:" + targetHeight + ",linecount:" + lineCount);
 
-                if ((maxLines == 1 && textHeight > targetHeight) || lineCount > maxLines || realTotalHeight > targetHeight) {
-                    size = getHeightAutofitDirectionTextSize(text, textPaint, targetWidth,
-                            targetHeight, maxLines, min, max, precision, displayMetrics);
+                if (overflowsHeight(probes[0], size, lineCount, maxLines, targetHeight)) {
+                    size = getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_HEIGHT, min, max,
+                            precision);
                 }
                 break;
             case ADAPT_DIRECTION_BOTH:
                 float widthSize = size;
                 float heightSize = size;
-                if ((maxLines == 1 && textWidth > targetWidth) || lineCount > maxLines) {
-                    widthSize = getWidthAutofitDirectionTextSize(text, textPaint, targetWidth,
-                            maxLines, min, max, precision, displayMetrics);
+                if (overflowsWidth(measuredText, textPaint, size, lineCount, maxLines, targetWidth)) {
+                    widthSize = getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, min, max,
+                            precision);
                 }
 
-                if ((maxLines == 1 && textHeight > targetHeight) || lineCount > maxLines || realTotalHeight > targetHeight) {
-                    heightSize = getHeightAutofitDirectionTextSize(text, textPaint, targetWidth,
-                            targetHeight, maxLines, min, max, precision, displayMetrics);
+                if (overflowsHeight(probes[0], size, lineCount, maxLines, targetHeight)) {
+                    heightSize = getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_HEIGHT, min, max,
+                            precision);
                 }
                 size = Math.min(widthSize, heightSize);
                 break;
         }
-        if (size < minTextSize) {
-            size = minTextSize;
-        }
-
-        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, size);
+        return size;
     }
 
     /**
-     * 二分法找到宽度匹配的文本最佳大小
+     * Returns whether the text fits at the max text size, the check {@link #autofit} does before
+     * searching.
      */
-    private static float getWidthAutofitDirectionTextSize(CharSequence text, TextPaint textPaint,
-            float targetWidth, int maxLines, float min, float max, float precision,
-            DisplayMetrics displayMetrics) {
-        float mid = (min + max) / 2.0f;
-        int lineCount = 1;
-        StaticLayout layout = null;
-
-        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PX, mid,
-                displayMetrics));
+    private static boolean fitsAtMaxSize(TextView view, AutofitMeasuredText measuredText,
+            TextPaint textPaint, AutofitProbe[] probes, float maxTextSize, int maxLines,
+            int adaptDirection) {
+        int targetHeight = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        int targetWidth = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        setProbes(view, measuredText, textPaint, probes, maxLines);
+
+        int lineCount = probes[0].getLineCount(maxTextSize);
+        boolean fitsWidth = adaptDirection == ADAPT_DIRECTION_HEIGHT || !overflowsWidth(
+                measuredText, textPaint, maxTextSize, lineCount, maxLines, targetWidth);
+        boolean fitsHeight = adaptDirection == ADAPT_DIRECTION_WIDTH || !overflowsHeight(
+                probes[0], maxTextSize, lineCount, maxLines, targetHeight);
+        return fitsWidth && fitsHeight;
+    }
 
+    private static boolean overflowsWidth(AutofitMeasuredText measuredText, TextPaint textPaint,
+            float size, int lineCount, int maxLines, int targetWidth) {
+        if (lineCount > maxLines) {
+            return true;
+        }
         if (maxLines != 1) {
-            layout = new StaticLayout(text, textPaint, (int)targetWidth, Layout.Alignment.ALIGN_NORMAL,
-                    1.0f, 0.0f, true);
-            lineCount = layout.getLineCount();
+            return false;
         }
+        CharSequence text = measuredText.getText();
+        textPaint.setTextSize(size);
+        return textPaint.measureText(text, 0, text.length()) > targetWidth;
+    }
 
-//        if (SPEW) Log.e(TAG, "min=" + min + " , max=" + max + " mid=" + mid +
-//                " target=" + targetWidth + " maxLines=" + maxLines + " lineCount=" + lineCount);
+    private static boolean overflowsHeight(AutofitProbe probe, float size, int lineCount,
+            int maxLines, int targetHeight) {
+        Paint.FontMetrics fm = probe.getFontMetrics(size);
+        float textHeight = fm.descent - fm.ascent;
+        float realTotalHeight = fm.bottom - fm.ascent
+                + (fm.leading + fm.bottom - fm.top) * (lineCount - 1);
+        return (maxLines == 1 && textHeight > targetHeight) || lineCount > maxLines
+                || realTotalHeight > targetHeight;
+    }
 
-        if (lineCount > maxLines) {
-            // For the case that `text` has more newline characters than `maxLines`.
-            if ((max - min) < precision) {
-                return min;
-            }
-            return getWidthAutofitDirectionTextSize(text, textPaint, targetWidth, maxLines, min, mid, precision,
-                    displayMetrics);
+    /**
+     * 在已知包含结果的区间 [lower, upper] 内搜索，不再试探最大字号
+     */
+    private static float autofitInRange(TextView view, AutofitMeasuredText measuredText,
+            TextPaint textPaint, AutofitProbe[] probes, int maxLines, float precision,
+            int adaptDirection, float lower, float upper) {
+        setProbes(view, measuredText, textPaint, probes, maxLines);
+
+        if (adaptDirection == ADAPT_DIRECTION_BOTH) {
+            return Math.min(
+                    getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_WIDTH, lower, upper, precision),
+                    getAutofitDirectionTextSize(probes, ADAPT_DIRECTION_HEIGHT, lower, upper, precision));
         }
-        else if (lineCount < maxLines) {
-            return getWidthAutofitDirectionTextSize(text, textPaint, targetWidth, maxLines, mid, max, precision,
-                    displayMetrics);
+        return getAutofitDirectionTextSize(probes, adaptDirection, lower, upper, precision);
+    }
+
+    /**
+     * 不限制行数时同时搜索行数和字号：找到按排版结果的行数计算，高度不超过目标高度的最大字号。
+     * 每个段落至少一行、至少占 宽度/目标宽度 行，只用字体度量就能求出字号上界，再在上界以下二分
+     *
+     * @return the fitted size, not yet clamped to the minimum text size, or -1 if the view has no
+     * size yet.
+     */
+    private static float autofitAutoLines(TextView view, AutofitMeasuredText measuredText,
+            TextPaint textPaint, AutofitProbe[] probes, float maxTextSize, float precision,
+            int adaptDirection) {
+        int targetHeight = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        int targetWidth = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return -1;
         }
-        else {
-            float maxLineWidth = 0;
-            if (maxLines == 1) {
-                maxLineWidth = textPaint.measureText(text, 0, text.length());
-            } else {
-                for (int i = 0; i < lineCount; i++) {
-                    if (layout.getLineWidth(i) > maxLineWidth) {
-                        maxLineWidth = layout.getLineWidth(i);
-                    }
+
+        setProbes(view, measuredText, textPaint, probes, Integer.MAX_VALUE);
+        AutofitProbe probe = probes[0];
+
+        // Paragraph widths per pixel of text size, widths scale linearly with the size
+        CharSequence text = measuredText.getProbeText();
+        int paragraphCount = measuredText.getParagraphCount();
+        float[] paragraphWidths = new float[paragraphCount];
+        textPaint.setTextSize(maxTextSize);
+        for (int i = 0; i < paragraphCount; i++) {
+            paragraphWidths[i] = textPaint.measureText(text, measuredText.getParagraphStart(i),
+                    measuredText.getParagraphEnd(i)) / maxTextSize;
+        }
+
+        // Analytical bound, no layout needed
+        float lo = 0;
+        float hi = maxTextSize;
+        if (probe.getHeight(hi, getMinLines(paragraphWidths, hi, targetWidth)) > targetHeight) {
+            while (hi - lo >= precision) {
+                float mid = (lo + hi) / 2.0f;
+                if (probe.getHeight(mid, getMinLines(paragraphWidths, mid, targetWidth))
+                        > targetHeight) {
+                    hi = mid;
+                } else {
+                    lo = mid;
                 }
             }
+        } else {
+            lo = hi;
+        }
+        // The bound is usually close, often a single layout is enough
+        if (fitsAutoLines(probe, lo, adaptDirection, targetWidth, targetHeight)) {
+            return lo;
+        }
 
-            if ((max - min) < precision) {
-                return min;
-            } else if (maxLineWidth > targetWidth) {
-                return getWidthAutofitDirectionTextSize(text, textPaint, targetWidth, maxLines, min, mid, precision,
-                        displayMetrics);
-            } else if (maxLineWidth < targetWidth) {
-                return getWidthAutofitDirectionTextSize(text, textPaint, targetWidth, maxLines, mid, max, precision,
-                        displayMetrics);
+        hi = lo;
+        lo = 0;
+        while (hi - lo >= precision) {
+            float mid = (lo + hi) / 2.0f;
+            if (fitsAutoLines(probe, mid, adaptDirection, targetWidth, targetHeight)) {
+                lo = mid;
             } else {
-                return mid;
+                hi = mid;
             }
         }
+        return lo;
+    }
+
+    private static int getMinLines(float[] paragraphWidths, float size, float targetWidth) {
+        int lines = 0;
+        for (float width : paragraphWidths) {
+            lines += Math.max(1, (int) Math.ceil(width * size / targetWidth));
+        }
+        return lines;
+    }
+
+    private static boolean fitsAutoLines(AutofitProbe probe, float size, int adaptDirection,
+            float targetWidth, float targetHeight) {
+        int lines = probe.getLineCount(size);
+        return probe.getHeight(size, lines) <= targetHeight
+                && (adaptDirection == ADAPT_DIRECTION_HEIGHT
+                || probe.getMaxLineWidth() <= targetWidth);
+    }
+
+    private static void setProbes(TextView view, AutofitMeasuredText measuredText,
+            TextPaint textPaint, AutofitProbe[] probes, int maxLines) {
+        int targetHeight = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        int targetWidth = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        textPaint.set(view.getPaint());
+        for (AutofitProbe probe : probes) {
+            probe.set(measuredText, textPaint, targetWidth, targetHeight, maxLines);
+        }
     }
 
     /**
-     * 二分法找到高度匹配的文本最佳大小
+     * 在最小字号下排版一次，若仍放不下则在最后一个可见行截断并追加省略号
+     *
+     * @param text The text as displayed, after the transformation method, which is measured.
+     * @param source The text set on the TextView, which is truncated at the same offset so the
+     * transformation still applies to the result.
+     * @return the truncated text, or {@code null} if {@code text} already fits at {@code size}.
      */
-    private static float getHeightAutofitDirectionTextSize(CharSequence text, TextPaint textPaint,
-            float targetWidth, float targetHeight, int maxLines, float min, float max,
-            float precision, DisplayMetrics displayMetrics) {
-        float mid = (min + max) / 2.0f;
-        int lineCount = 1;
+    private static CharSequence getEllipsizedText(TextView view, CharSequence text,
+            CharSequence source, TextPaint textPaint, AutofitProbe probe, float size,
+            int maxLines, int adaptDirection) {
+        int targetHeight = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        int targetWidth = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        textPaint.setTextSize(size);
+
+        int lines = maxLines;
+        if (adaptDirection != ADAPT_DIRECTION_WIDTH) {
+            // Same height model as getHeightAutofitDirectionTextSize
+            Paint.FontMetrics fm = textPaint.getFontMetrics();
+            float lineHeight = fm.leading + fm.bottom - fm.top;
+            int fitLines = 1 + (int) ((targetHeight - (fm.bottom - fm.ascent)) / lineHeight);
+            lines = Math.max(1, Math.min(lines, fitLines));
+        }
+
+        int start = 0;
+        int end = text.length();
         StaticLayout layout = null;
+        if (lines == 1 && maxLines == 1) {
+            if (textPaint.measureText(text, 0, end) <= targetWidth) {
+                return null;
+            }
+        } else {
+            layout = probe.getLayout(size);
+            if (layout.getLineCount() <= lines) {
+                return null;
+            }
+            start = layout.getLineStart(lines - 1);
+            end = layout.getLineEnd(lines - 1);
+        }
 
-        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PX, mid,
-                displayMetrics));
+        // Cut where the ellipsis still fits, found in one pass over the line
+        float available = Math.max(0, targetWidth - textPaint.measureText(ELLIPSIS));
+        if (layout == null) {
+            end = textPaint.breakText(text, 0, end, true, available, null);
+        } else {
+            // The offset nearest to the edge, which may be the one just past it
+            end = Math.min(end, layout.getOffsetForHorizontal(lines - 1, available));
+            if (end > start && layout.getPrimaryHorizontal(end) > available) {
+                end--;
+            }
+        }
+        if (end > start && end < text.length() && Character.isLowSurrogate(text.charAt(end))) {
+            end--;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        end = Math.min(end, source.length());
+        if (end > 0 && Character.isHighSurrogate(source.charAt(end - 1))) {
+            end--;
+        }
+        return TextUtils.concat(source.subSequence(0, end), ELLIPSIS);
+    }
 
-        if (maxLines != 1) {
-            layout = new StaticLayout(text, textPaint, (int)targetWidth, Layout.Alignment.ALIGN_NORMAL,
-                    1.0f, 0.0f, true);
-            lineCount = layout.getLineCount();
+    /**
+     * 二分法找到与目标边界匹配的文本最佳大小，并行度大于 1 时改用 k 分法
+     */
+    private static float getAutofitDirectionTextSize(AutofitProbe[] probes, int adaptDirection,
+            float min, float max, float precision) {
+        if (probes.length > 1) {
+            return getParallelAutofitDirectionTextSize(probes, adaptDirection, min, max, precision);
+        }
+        return getAutofitDirectionTextSize(probes[0], adaptDirection, min, max, precision);
+    }
+
+    private static float getAutofitDirectionTextSize(AutofitProbe probe, int adaptDirection,
+            float min, float max, float precision) {
+        if ((max - min) < precision) {
+            return min;
         }
 
+        float mid = (min + max) / 2.0f;
+        int result = probe.compare(adaptDirection, mid);
+
         if (SPEW) Log.e(TAG, "precision=" + precision + " , min=" + min + " , max=" + max + " , mid=" + mid
-                + " , targetWidth=" + targetWidth + " , targetHeight=" + targetHeight
-                + " , maxLines=" + maxLines + " , lineCount=" + lineCount);
+                + " , adaptDirection=" + adaptDirection + " , result=" + result);
 
-        if (lineCount > maxLines) {
-            if ((max - min) < precision) {
-                return min;
-            }
-            return getHeightAutofitDirectionTextSize(text, textPaint, targetWidth, targetHeight, maxLines,
-                    min, mid, precision, displayMetrics);
-        } else if (lineCount < maxLines) {
-            return getHeightAutofitDirectionTextSize(text, textPaint, targetWidth, targetHeight, maxLines,
-                    mid, max, precision, displayMetrics);
+        if (result > 0) {
+            return getAutofitDirectionTextSize(probe, adaptDirection, min, mid, precision);
+        } else if (result < 0) {
+            return getAutofitDirectionTextSize(probe, adaptDirection, mid, max, precision);
         } else {
-            Paint.FontMetrics fm = textPaint.getFontMetrics();
-            float realHeight = fm.bottom - fm.ascent + (fm.leading + fm.bottom - fm.top) * (lineCount - 1);
-            if (SPEW) Log.e(TAG, "realHeight=" + realHeight);
-            if ((max - min) < precision) {
-                return min;
-            } else if (realHeight > targetHeight) {
-                return getHeightAutofitDirectionTextSize(text, textPaint, targetWidth, targetHeight, maxLines,
-                        min, mid, precision, displayMetrics);
-            } else if (realHeight < targetHeight) {
-                return getHeightAutofitDirectionTextSize(text, textPaint, targetWidth, targetHeight, maxLines,
-                        mid, max, precision, displayMetrics);
-            } else {
-                return mid;
+            return mid;
+        }
+    }
+
+    /**
+     * k 分法：每轮在线程池上同时试探 k 个字号，搜索区间缩小为原来的 1/(k+1)
+     */
+    private static float getParallelAutofitDirectionTextSize(AutofitProbe[] probes,
+            int adaptDirection, float min, float max, float precision) {
+        int k = probes.length;
+        List<ProbeTask> tasks = new ArrayList<ProbeTask>(k);
+        for (AutofitProbe probe : probes) {
+            tasks.add(new ProbeTask(probe, adaptDirection));
+        }
+
+        try {
+            while ((max - min) >= precision) {
+                float step = (max - min) / (k + 1);
+                for (int i = 0; i < k; i++) {
+                    tasks.get(i).mSize = min + step * (i + 1);
+                }
+
+                List<Future<Integer>> results = getSearchExecutor().invokeAll(tasks);
+                float lower = min;
+                float upper = max;
+                for (int i = 0; i < k; i++) {
+                    int result = results.get(i).get();
+                    float size = tasks.get(i).mSize;
+                    if (result == 0) {
+                        return size;
+                    } else if (result < 0) {
+                        lower = size;
+                    } else {
+                        upper = size;
+                        break;
+                    }
+                }
+                min = lower;
+                max = upper;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return getAutofitDirectionTextSize(probes[0], adaptDirection, min, max, precision);
+        } catch (ExecutionException e) {
+            // Let the failure surface on the calling thread
+            return getAutofitDirectionTextSize(probes[0], adaptDirection, min, max, precision);
         }
+        return min;
     }
 
-    private static int getLineCount(CharSequence text, TextPaint paint, float size, float width,
-            DisplayMetrics displayMetrics) {
-        paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PX, size,
-                displayMetrics));
-        StaticLayout layout = new StaticLayout(text, paint, (int)width,
-                Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, true);
-        return layout.getLineCount();
+    private static synchronized ExecutorService getSearchExecutor() {
+        if (sSearchExecutor == null) {
+            sSearchExecutor = Executors.newFixedThreadPool(MAX_SEARCH_PARALLELISM,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "AutofitSearch");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sSearchExecutor;
     }
 
     private static int getMaxLines(TextView view) {
@@ -319,17 +575,85 @@ public class AutofitDirectionHelper {
     private float mMaxTextSize;
     private float mPrecision;
     private int mAdaptDirection;
+    private boolean mEllipsize;
+    private boolean mAutoMaxLines;
+    private boolean mPreferPlatformAutoSize;
+    private boolean mRenderScale;
+    private boolean mResizeTracking;
+    private long mResizeSettleDelay;
+    private boolean mSettling;
+    private boolean mCacheHit;
+
+    // Inputs and result of the last fit, the starting point of a tracked resize
+    private int mLastFitWidth;
+    private int mLastFitHeight;
+    private float mLastFitSize = -1;
+    private int mLastFitGeneration;
+    private int mLastFitMaxLines;
+    private float mLastFitMaxTextSize;
+    private int mLastFitAdaptDirection;
+    // The rest of what the last fit depends on, and the text size it left applied
+    private float mLastFitMinTextSize;
+    private float mLastFitPrecision;
+    private boolean mLastFitEllipsize;
+    private boolean mLastFitAutoMaxLines;
+    private boolean mLastFitRenderScaling;
+    private Typeface mLastFitTypeface;
+    private float mLastFitTextScaleX;
+    private float mLastFitLetterSpacing;
+    private int mLastFitPaintFlags;
+    private float mLastFitTextSize;
+    // Fit restored from the instance state, taken by the first fit it still matches
+    private float mRestoredFitSize = -1;
+    private int mRestoredFitWidth;
+    private int mRestoredFitHeight;
+    private int mRestoredFitTextHash;
+    private int mRestoredFitConfigHash;
+    private float mRenderScaleFactor = 1f;
+    private int mSearchParallelism = 1;
+    private AutofitProbe[] mProbes;
+    private final AutofitMeasuredText mMeasuredText = new AutofitMeasuredText(true);
+    private final FitStats mFitStats = new FitStats();
+    private Runnable mFitCallback;
+    // Verifies predicted sizes with real layouts
+    private final ProbeCheck mProbeCheck = new ProbeCheck();
+    // Reused so that cache hits don't allocate
+    private final AutofitWidthCache.Lookup mWidthCacheLookup = new AutofitWidthCache.Lookup();
+    private final AutofitAdvanceTable.Key mAdvanceTableKey = new AutofitAdvanceTable.Key();
+    // Only created while breakpoint indexing is on
+    private AutofitBreakpointIndex mBreakpointIndex;
 
     private boolean mEnabled;
+    private boolean mDelegatingToPlatform;
     private boolean mIsAutofitting;
+    // Whether a fit is queued in the AutofitScheduler
+    private boolean mScheduled;
+    /**
+     * Untruncated text while the TextView shows the output of the ellipsize fallback.
+     */
+    private CharSequence mFullText;
 
     private ArrayList<OnTextSizeChangeListener> mListeners;
 
-    private TextWatcher mTextWatcher = new AutofitDirectionTextWatcher();
+    private AutofitDirectionTextWatcher mTextWatcher = new AutofitDirectionTextWatcher();
 
     private View.OnLayoutChangeListener mOnLayoutChangeListener =
             new AutofitOnLayoutChangeListener();
 
+    private View.OnAttachStateChangeListener mOnAttachStateChangeListener =
+            new AutofitOnAttachStateChangeListener();
+    // Whether the TextWatcher and the layout listener are registered on the TextView
+    private boolean mListening;
+
+    private Runnable mSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSettling = true;
+            fitNow();
+            mSettling = false;
+        }
+    };
+
     private AutofitDirectionHelper(TextView view) {
         final Context context = view.getContext();
         float scaledDensity = context.getResources().getDisplayMetrics().scaledDensity;
@@ -521,18 +845,45 @@ public class AutofitDirectionHelper {
             mEnabled = enabled;
 
             if (enabled) {
-                mTextView.addTextChangedListener(mTextWatcher);
-                mTextView.addOnLayoutChangeListener(mOnLayoutChangeListener);
-                autofit();
+                // Nothing else happens until the TextView is attached, so helpers can be
+                // created while inflating on a background thread
+                mTextView.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
+                if (mTextView.isAttachedToWindow()) {
+                    startListening();
+                    autofit();
+                }
             } else {
-                mTextView.removeTextChangedListener(mTextWatcher);
-                mTextView.removeOnLayoutChangeListener(mOnLayoutChangeListener);
+                mTextView.removeOnAttachStateChangeListener(mOnAttachStateChangeListener);
+                if (mListening) {
+                    mListening = false;
+                    mTextView.removeTextChangedListener(mTextWatcher);
+                    mTextView.removeOnLayoutChangeListener(mOnLayoutChangeListener);
+                }
+                mTextView.removeCallbacks(mSettleRunnable);
+                if (mScheduled) {
+                    AutofitScheduler.getInstance().cancel(this);
+                }
+                updatePlatformAutoSize();
+                setRenderScaleFactor(1f);
                 mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextSize);
+                restoreFullText();
             }
         }
         return this;
     }
 
+    /**
+     * Detaches this helper from its TextView: stops autofitting, restores the original text size
+     * and text, and drops every listener. The helper must not be used afterwards.
+     */
+    public void release() {
+        setEnabled(false);
+        if (mListeners != null) {
+            mListeners.clear();
+        }
+        mMeasuredText.release();
+    }
+
     /**
      * Returns the original text size of the View.
      *
@@ -593,18 +944,761 @@ public class AutofitDirectionHelper {
         return this;
     }
 
+    /**
+     * Returns whether text that does not fit at the minimum text size is truncated with an
+     * ellipsis.
+     */
+    public boolean isEllipsizeFallback() {
+        return mEllipsize;
+    }
+
+    /**
+     * Set whether text that does not fit even at the minimum text size is truncated with an
+     * ellipsis. The truncation point is computed from a single layout at the minimum size and the
+     * TextView is given the truncated text, so no further measuring pass is needed. The text
+     * of an {@link EditText} is never truncated.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_ellipsizeFallback
+     */
+    public AutofitDirectionHelper setEllipsizeFallback(boolean ellipsize) {
+        if (mEllipsize != ellipsize) {
+            mEllipsize = ellipsize;
+
+            autofit();
+        }
+        return this;
+    }
+
+    /**
+     * Returns whether the line count is chosen by the fit when maxLines is not set.
+     */
+    public boolean isAutoMaxLines() {
+        return mAutoMaxLines;
+    }
+
+    /**
+     * Set whether text without a maxLines limit is fitted too. The fit then looks for the
+     * largest size whose laid out lines fit the height, at whatever line count results, instead
+     * of leaving the text size alone. Only applies to {@link #ADAPT_DIRECTION_HEIGHT} and
+     * {@link #ADAPT_DIRECTION_BOTH}.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_autoMaxLines
+     */
+    public AutofitDirectionHelper setAutoMaxLines(boolean autoMaxLines) {
+        if (mAutoMaxLines != autoMaxLines) {
+            mAutoMaxLines = autoMaxLines;
+
+            autofit();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the text set on the TextView, before any truncation by the ellipsize fallback.
+     */
+    public CharSequence getFullText() {
+        return mFullText != null ? mFullText : mTextView.getText();
+    }
+
+    private void restoreFullText() {
+        if (mFullText != null) {
+            CharSequence text = mFullText;
+            mFullText = null;
+            mIsAutofitting = true;
+            mTextView.setText(text);
+            mIsAutofitting = false;
+        }
+    }
+
+    /**
+     * Returns the instrumentation of the fits run by this helper. The returned object is updated
+     * in place after every fit.
+     */
+    public FitStats getFitStats() {
+        return mFitStats;
+    }
+
+    /**
+     * Returns the number of candidate text sizes probed at once while searching.
+     */
+    public int getSearchParallelism() {
+        return mSearchParallelism;
+    }
+
+    /**
+     * Set the number of candidate text sizes probed at once while searching. With a value of
+     * {@code k} greater than 1 each round lays out {@code k} sizes on a shared worker pool, every
+     * worker with its own paint, and narrows the range by a factor of {@code k + 1} instead of 2.
+     * This pays off for long or heavily styled texts where a single layout takes milliseconds.
+     * The value is capped at the number of available processors.
+     *
+     * @param parallelism The number of sizes probed per round, 1 for a plain bisection.
+     */
+    public AutofitDirectionHelper setSearchParallelism(int parallelism) {
+        parallelism = Math.max(1, Math.min(parallelism, MAX_SEARCH_PARALLELISM));
+        if (mSearchParallelism != parallelism) {
+            mSearchParallelism = parallelism;
+
+            autofit();
+        }
+        return this;
+    }
+
+    /**
+     * 每段文本只分析一次 span 和段落结构，之后的试探复用该结果
+     */
+    private AutofitMeasuredText getMeasuredText(CharSequence text) {
+        TransformationMethod method = mTextView.getTransformationMethod();
+        if (!mMeasuredText.isFor(text, method)) {
+            mMeasuredText.set(text, method, mTextView);
+        }
+        return mMeasuredText;
+    }
+
+    private AutofitProbe[] getProbes() {
+        if (mProbes == null || mProbes.length != mSearchParallelism) {
+            mProbes = new AutofitProbe[mSearchParallelism];
+            for (int i = 0; i < mProbes.length; i++) {
+                mProbes[i] = new AutofitProbe();
+            }
+        }
+        return mProbes;
+    }
+
+    /**
+     * Returns whether fits the platform autosize engine handles equivalently are delegated to it.
+     */
+    public boolean isPreferPlatformAutoSize() {
+        return mPreferPlatformAutoSize;
+    }
+
+    /**
+     * Set whether fits the platform engine can express are delegated to
+     * {@link TextView#setAutoSizeTextTypeUniformWithConfiguration(int, int, int, int)}. Only
+     * {@link #ADAPT_DIRECTION_BOTH} with a line limit and no ellipsize fallback qualifies, the
+     * platform also fits both bounds with at most {@code maxLines} lines. Its step granularity is
+     * whole pixels, so the precision is rounded up to at least 1px. Every other configuration
+     * keeps using the custom search.
+     */
+    public AutofitDirectionHelper setPreferPlatformAutoSize(boolean preferPlatformAutoSize) {
+        if (mPreferPlatformAutoSize != preferPlatformAutoSize) {
+            mPreferPlatformAutoSize = preferPlatformAutoSize;
+
+            autofit();
+        }
+        return this;
+    }
+
+    /**
+     * The text of an EditText is the user's input and is never truncated.
+     */
+    private boolean canEllipsize() {
+        return mEllipsize && !(mTextView instanceof EditText);
+    }
+
+    private boolean canDelegateToPlatform() {
+        return mPreferPlatformAutoSize
+                && mAdaptDirection == ADAPT_DIRECTION_BOTH
+                && !mEllipsize
+                && mMaxLines > 0 && mMaxLines != Integer.MAX_VALUE
+                && (int) mMinTextSize > 0 && (int) mMinTextSize < (int) mMaxTextSize
+                // EditText doesn't support platform autosizing
+                && !(mTextView instanceof EditText);
+    }
+
+    /**
+     * 等价时交给平台 autosize 处理，否则关闭平台 autosize
+     *
+     * @return true if the platform engine is handling the fit.
+     */
+    private boolean updatePlatformAutoSize() {
+        if (mEnabled && canDelegateToPlatform()) {
+            int min = (int) mMinTextSize;
+            int max = (int) mMaxTextSize;
+            int step = Math.max(1, (int) Math.ceil(mPrecision));
+            if (!mDelegatingToPlatform
+                    || mTextView.getAutoSizeMinTextSize() != min
+                    || mTextView.getAutoSizeMaxTextSize() != max
+                    || mTextView.getAutoSizeStepGranularity() != step) {
+                mTextView.setAutoSizeTextTypeUniformWithConfiguration(min, max, step,
+                        TypedValue.COMPLEX_UNIT_PX);
+            }
+            mDelegatingToPlatform = true;
+            return true;
+        }
+        if (mDelegatingToPlatform) {
+            mDelegatingToPlatform = false;
+            mTextView.setAutoSizeTextTypeWithDefaults(TextView.AUTO_SIZE_TEXT_TYPE_NONE);
+        }
+        return false;
+    }
+
+    private void startListening() {
+        if (!mListening) {
+            mListening = true;
+            mTextView.addTextChangedListener(mTextWatcher);
+            mTextView.addOnLayoutChangeListener(mOnLayoutChangeListener);
+        }
+    }
+
+    /**
+     * Fits the text, or hands the fit to the {@link AutofitScheduler} when it is enabled. Does
+     * nothing until the TextView is attached and measured, the layout listener fits it then.
+     */
     private void autofit() {
-        float oldTextSize = mTextView.getTextSize();
+        if (mIsAutofitting) {
+            return;
+        }
+        if (!mEnabled || !mTextView.isAttachedToWindow()
+                || mTextView.getWidth() <= 0 || mTextView.getHeight() <= 0) {
+            return;
+        }
+        if (AutofitScheduler.getInstance().schedule(this)) {
+            return;
+        }
+        fitNow();
+    }
+
+    TextView getTextView() {
+        return mTextView;
+    }
+
+    boolean isScheduled() {
+        return mScheduled;
+    }
+
+    void setScheduled(boolean scheduled) {
+        mScheduled = scheduled;
+    }
+
+    /**
+     * Set what runs after each fit, e.g. to redraw {@link FitStats} shown outside the TextView.
+     */
+    void setFitCallback(Runnable callback) {
+        mFitCallback = callback;
+    }
+
+    /**
+     * Runs the fit queued in the {@link AutofitScheduler}, unless it was cancelled.
+     */
+    void runScheduledFit() {
+        if (mScheduled) {
+            mScheduled = false;
+            fitNow();
+        }
+    }
+
+    /**
+     * Fits the text right away.
+     */
+    void fitNow() {
+        if (mIsAutofitting) {
+            // Re-entered through the TextWatcher while we replace the text ourselves
+            return;
+        }
+        if (updatePlatformAutoSize()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CharSequence text = getFullText();
+        AutofitMeasuredText measuredText = getMeasuredText(text);
+        if (isLastFitCurrent(measuredText)) {
+            // E.g. the layout pass requested by the last fit's own change of the text size
+            return;
+        }
+
+        float oldTextSize = getEffectiveTextSize();
         float textSize;
+        AutofitProbe[] probes = getProbes();
+        for (AutofitProbe probe : probes) {
+            probe.resetCounters();
+        }
 
+        CharSequence ellipsized = null;
         mIsAutofitting = true;
-        autofit(mTextView, mPaint, mMinTextSize, mMaxTextSize, mMaxLines, mPrecision, mAdaptDirection);
+        float size = fitTextSize(measuredText, probes);
+        if (size >= 0) {
+            if (size <= mMinTextSize) {
+                size = mMinTextSize;
+                if (canEllipsize()) {
+                    // The restored fit and the caches skip the search, which sets the probes up
+                    setProbes(mTextView, measuredText, mPaint, probes, mMaxLines);
+                    ellipsized = getEllipsizedText(mTextView, measuredText.getText(), text,
+                            mPaint, probes[0], size, mMaxLines, mAdaptDirection);
+                }
+            }
+            applyTextSize(size);
+        }
+        for (AutofitProbe probe : probes) {
+            probe.clear();
+        }
         mIsAutofitting = false;
 
-        textSize = mTextView.getTextSize();
+        if (ellipsized != null) {
+            mFullText = text;
+            mIsAutofitting = true;
+            mTextView.setText(ellipsized);
+            mIsAutofitting = false;
+        } else {
+            restoreFullText();
+        }
+
+        textSize = getEffectiveTextSize();
+        mLastFitTextSize = textSize;
+        mFitStats.record(probes, System.nanoTime() - start, mAdaptDirection, mCacheHit,
+                textSize != oldTextSize);
         if (textSize != oldTextSize) {
             sendTextSizeChange(textSize, oldTextSize);
         }
+        if (mFitCallback != null) {
+            mFitCallback.run();
+        }
+    }
+
+    private float fitTextSize(AutofitMeasuredText measuredText, AutofitProbe[] probes) {
+        int width = mTextView.getWidth() - mTextView.getPaddingLeft() - mTextView.getPaddingRight();
+        int height = mTextView.getHeight() - mTextView.getPaddingTop() - mTextView.getPaddingBottom();
+
+        float size = -1;
+        boolean widthCacheable = isWidthCacheable(measuredText, width, height);
+        mCacheHit = false;
+        if (mRestoredFitSize >= 0 && width > 0 && height > 0) {
+            if (width == mRestoredFitWidth && height == mRestoredFitHeight
+                    && mRestoredFitTextHash == getFitTextHash()
+                    && mRestoredFitConfigHash == getFitConfigHash()) {
+                size = mRestoredFitSize;
+                mCacheHit = true;
+            }
+            mRestoredFitSize = -1;
+        }
+        if (size < 0 && widthCacheable) {
+            mPaint.set(mTextView.getPaint());
+            size = AutofitWidthCache.get(mWidthCacheLookup,
+                    measuredText.getProbeText().toString(), mPaint, width, mMaxTextSize,
+                    mPrecision);
+            mCacheHit = size >= 0;
+        }
+        if (size < 0 && canUseBreakpointIndex(width, height)) {
+            size = fitFromBreakpointIndex(measuredText, probes, width, height);
+        }
+        if (size < 0 && mResizeTracking && !mSettling
+                && canTrackResize(measuredText, width, height)) {
+            size = trackResize(measuredText, probes, width, height);
+        }
+        if (size < 0 && isAutoMaxLinesFit()) {
+            size = autofitAutoLines(mTextView, measuredText, mPaint, probes, mMaxTextSize,
+                    mPrecision, mAdaptDirection);
+        } else if (size < 0) {
+            size = autofitPredicted(measuredText, probes);
+        }
+        if (size < 0) {
+            size = autofit(mTextView, measuredText, mPaint, probes, mMaxTextSize, mMaxLines,
+                    mPrecision, mAdaptDirection);
+        }
+        if (widthCacheable && !mCacheHit && size >= 0) {
+            AutofitWidthCache.put(mWidthCacheLookup, measuredText.getProbeText().toString(), mPaint,
+                    width, size);
+        }
+
+        if (size >= 0) {
+            mLastFitWidth = width;
+            mLastFitHeight = height;
+            mLastFitSize = size;
+            mLastFitGeneration = measuredText.getGeneration();
+            mLastFitMaxLines = mMaxLines;
+            mLastFitMaxTextSize = mMaxTextSize;
+            mLastFitAdaptDirection = mAdaptDirection;
+            mLastFitMinTextSize = mMinTextSize;
+            mLastFitPrecision = mPrecision;
+            mLastFitEllipsize = mEllipsize;
+            mLastFitAutoMaxLines = mAutoMaxLines;
+            mLastFitRenderScaling = isRenderScaling();
+            TextPaint paint = mTextView.getPaint();
+            mLastFitTypeface = paint.getTypeface();
+            mLastFitTextScaleX = paint.getTextScaleX();
+            mLastFitLetterSpacing = paint.getLetterSpacing();
+            mLastFitPaintFlags = paint.getFlags();
+        } else {
+            mLastFitSize = -1;
+        }
+        return size;
+    }
+
+    /**
+     * 上次适配的文本、边界和配置都没有变化、它应用的字号也没有被改掉时，再适配只会得到同样的结果。
+     * 等待中的 settle 适配要恢复精度，不能跳过
+     */
+    private boolean isLastFitCurrent(AutofitMeasuredText measuredText) {
+        int width = mTextView.getWidth() - mTextView.getPaddingLeft() - mTextView.getPaddingRight();
+        int height = mTextView.getHeight() - mTextView.getPaddingTop() - mTextView.getPaddingBottom();
+        TextPaint paint = mTextView.getPaint();
+        return mLastFitSize >= 0 && !mSettling
+                && width == mLastFitWidth
+                && height == mLastFitHeight
+                && mLastFitGeneration == measuredText.getGeneration()
+                && mLastFitMaxLines == mMaxLines
+                && mLastFitMaxTextSize == mMaxTextSize
+                && mLastFitAdaptDirection == mAdaptDirection
+                && mLastFitMinTextSize == mMinTextSize
+                && mLastFitPrecision == mPrecision
+                && mLastFitEllipsize == mEllipsize
+                && mLastFitAutoMaxLines == mAutoMaxLines
+                && mLastFitRenderScaling == isRenderScaling()
+                && mLastFitTypeface == paint.getTypeface()
+                && mLastFitTextScaleX == paint.getTextScaleX()
+                && mLastFitLetterSpacing == paint.getLetterSpacing()
+                && mLastFitPaintFlags == paint.getFlags()
+                && mLastFitTextSize == getEffectiveTextSize();
+    }
+
+    /**
+     * 单行、按宽度适配且没有影响测量的 span 时，字号与可用宽度成正比，可以使用宽度归一化缓存
+     */
+    private boolean isWidthCacheable(AutofitMeasuredText measuredText, int width, int height) {
+        return mMaxLines == 1
+                && mAdaptDirection == ADAPT_DIRECTION_WIDTH
+                && !measuredText.hasMetricAffectingSpans()
+                && width > 0 && height > 0;
+    }
+
+    private boolean canUseBreakpointIndex(int width, int height) {
+        return mBreakpointIndex != null
+                && mAdaptDirection == ADAPT_DIRECTION_BOTH
+                && mMaxLines > 1 && mMaxLines != Integer.MAX_VALUE
+                && width > 0 && height > 0;
+    }
+
+    /**
+     * 行数只在少数字号处变化，两个断点之间行数不变，高度只取决于字体度量。
+     * 同一文本和宽度的断点只搜索一次，之后 maxLines、高度变化时直接查询，不必重新排版
+     */
+    private float fitFromBreakpointIndex(AutofitMeasuredText measuredText, AutofitProbe[] probes,
+            int width, int height) {
+        setProbes(mTextView, measuredText, mPaint, probes, mMaxLines);
+        if (!mBreakpointIndex.isFor(measuredText, width, mPaint, mMaxTextSize, mPrecision)) {
+            mBreakpointIndex.reset(measuredText, width, mPaint, mMaxTextSize, mPrecision);
+        }
+        return mBreakpointIndex.query(probes[0], mAdaptDirection, mMaxLines, width, height);
+    }
+
+    /**
+     * Returns whether multi-line fits in both directions are answered from an index of the sizes
+     * at which the line count changes.
+     */
+    public boolean isBreakpointIndexing() {
+        return mBreakpointIndex != null;
+    }
+
+    /**
+     * Set whether multi-line fits in both directions are answered from an index of the sizes at
+     * which the line count changes. The index is kept per text and width, so when only maxLines
+     * or the height change, fits need few or no layouts. Off by default, a single fit costs about
+     * the same as a search.
+     */
+    public AutofitDirectionHelper setBreakpointIndexing(boolean breakpointIndexing) {
+        if (breakpointIndexing != isBreakpointIndexing()) {
+            mBreakpointIndex = breakpointIndexing ? new AutofitBreakpointIndex() : null;
+        }
+        return this;
+    }
+
+    /**
+     * 字形宽度均匀的文本（纯 CJK，或等宽字体下的纯 ASCII）直接按字符宽度累加预测换行，搜索过程中不排版，
+     * 最后只用一次真实排版验证结果
+     *
+     * @return the fitted size, or -1 if the text can't be predicted or the prediction is off.
+     */
+    private float autofitPredicted(AutofitMeasuredText measuredText, AutofitProbe[] probes) {
+        if (measuredText.hasMetricAffectingSpans()) {
+            return -1;
+        }
+        AutofitAdvanceTable advances = AutofitAdvanceTable.get(mTextView.getPaint(),
+                mAdvanceTableKey);
+        if (!advances.canPredict(measuredText.getProbeText())) {
+            return -1;
+        }
+
+        // The probes need the text before they can tell how it breaks
+        setProbes(mTextView, measuredText, mPaint, probes, mMaxLines);
+        for (AutofitProbe probe : probes) {
+            probe.setAdvanceTable(advances);
+        }
+        float size = autofit(mTextView, measuredText, mPaint, probes, mMaxTextSize, mMaxLines,
+                mPrecision, mAdaptDirection);
+        for (AutofitProbe probe : probes) {
+            probe.setAdvanceTable(null);
+        }
+
+        if (size <= 0) {
+            return -1;
+        }
+        mProbeCheck.mProbe = probes[0];
+        boolean largestFit = mProbeCheck.isLargestFit(size, mMaxTextSize, mPrecision);
+        mProbeCheck.mProbe = null;
+        return largestFit ? size : -1;
+    }
+
+    /**
+     * Lays the text out at {@code size} and returns whether it fits in the fit's directions.
+     */
+    private boolean fitsAt(AutofitProbe probe, float size) {
+        if (mAdaptDirection == ADAPT_DIRECTION_BOTH) {
+            return probe.compare(ADAPT_DIRECTION_WIDTH, size) <= 0
+                    && probe.compare(ADAPT_DIRECTION_HEIGHT, size) <= 0;
+        }
+        return probe.compare(mAdaptDirection, size) <= 0;
+    }
+
+    /**
+     * Returns the unclamped size found by the last fit, or -1 if the text isn't fitted.
+     */
+    float getLastFitSize() {
+        return mLastFitSize;
+    }
+
+    int getLastFitWidth() {
+        return mLastFitWidth;
+    }
+
+    int getLastFitHeight() {
+        return mLastFitHeight;
+    }
+
+    /**
+     * Returns a hash of the text the fit is for, stable across process death.
+     */
+    int getFitTextHash() {
+        return getFullText().toString().hashCode();
+    }
+
+    /**
+     * Returns a hash of the configuration a fit depends on besides the text and the bounds,
+     * stable across process death.
+     */
+    int getFitConfigHash() {
+        TextPaint paint = mTextView.getPaint();
+        int result = mMaxLines;
+        result = 31 * result + Float.floatToIntBits(mMaxTextSize);
+        result = 31 * result + Float.floatToIntBits(mMinTextSize);
+        result = 31 * result + Float.floatToIntBits(mPrecision);
+        result = 31 * result + mAdaptDirection;
+        result = 31 * result + (mAutoMaxLines ? 1 : 0);
+        result = 31 * result + (mEllipsize ? 1 : 0);
+        result = 31 * result + (paint.getTypeface() != null ? paint.getTypeface().getStyle() : 0);
+        result = 31 * result + Float.floatToIntBits(paint.getTextScaleX());
+        result = 31 * result + Float.floatToIntBits(paint.getLetterSpacing());
+        TextPaint probePaint = new TextPaint(paint);
+        probePaint.setTextSize(TYPEFACE_PROBE_SIZE);
+        result = 31 * result + Float.floatToIntBits(probePaint.measureText(TYPEFACE_PROBE_TEXT));
+        return result;
+    }
+
+    /**
+     * 恢复保存的适配结果：文本和配置一致时立即应用保存的字号，避免重建后先以原始字号显示一帧；
+     * 之后第一次有尺寸的适配若边界也一致，则直接采用该字号而不再搜索
+     */
+    void restoreFit(int textHash, int width, int height, int configHash, float size) {
+        if (!mEnabled || mDelegatingToPlatform || size < 0
+                || textHash != getFitTextHash() || configHash != getFitConfigHash()) {
+            return;
+        }
+        mRestoredFitSize = size;
+        mRestoredFitWidth = width;
+        mRestoredFitHeight = height;
+        mRestoredFitTextHash = textHash;
+        mRestoredFitConfigHash = configHash;
+
+        float oldTextSize = getEffectiveTextSize();
+        mIsAutofitting = true;
+        applyTextSize(Math.max(size, mMinTextSize));
+        mIsAutofitting = false;
+        float textSize = getEffectiveTextSize();
+        if (textSize != oldTextSize) {
+            sendTextSizeChange(textSize, oldTextSize);
+        }
+    }
+
+    private boolean isAutoMaxLinesFit() {
+        return mAutoMaxLines
+                && (mMaxLines <= 0 || mMaxLines == Integer.MAX_VALUE)
+                && mAdaptDirection != ADAPT_DIRECTION_WIDTH;
+    }
+
+    private boolean canTrackResize(AutofitMeasuredText measuredText, int width, int height) {
+        return mLastFitSize >= 0
+                && !isAutoMaxLinesFit()
+                && width > 0 && height > 0
+                && (width != mLastFitWidth || height != mLastFitHeight)
+                && mLastFitGeneration == measuredText.getGeneration()
+                && mLastFitMaxLines == mMaxLines
+                && mLastFitMaxTextSize == mMaxTextSize
+                && mLastFitAdaptDirection == mAdaptDirection;
+    }
+
+    /**
+     * 尺寸连续变化时，字号随宽高单调变化：边界变大时新字号不小于上次的字号，变小时不大于上次的字号，
+     * 再按宽高的变化比例估计另一端，通常一两次试探即可完成
+     *
+     * @return the fitted size, or -1 if the bounds grew in one direction and shrank in the other.
+     */
+    private float trackResize(AutofitMeasuredText measuredText, AutofitProbe[] probes, int width,
+            int height) {
+        float ratioWidth = (float) width / mLastFitWidth;
+        float ratioHeight = (float) height / mLastFitHeight;
+        float precision = mPrecision;
+        if (mResizeSettleDelay > 0) {
+            // Coarse while the bounds keep changing, the settle fit restores the precision
+            precision *= RESIZE_TRACKING_PRECISION_FACTOR;
+            mTextView.removeCallbacks(mSettleRunnable);
+            mTextView.postDelayed(mSettleRunnable, mResizeSettleDelay);
+        }
+
+        float lower;
+        float upper;
+        float size;
+        if (ratioWidth >= 1 && ratioHeight >= 1) {
+            // A bisection below the max size never ends on it, so it's tried first like autofit()
+            if (fitsAtMaxSize(mTextView, measuredText, mPaint, probes, mMaxTextSize, mMaxLines,
+                    mAdaptDirection)) {
+                return mMaxTextSize;
+            }
+            // The last size still fits, only the upper end is estimated
+            lower = mLastFitSize;
+            upper = Math.min(mMaxTextSize,
+                    mLastFitSize * Math.max(ratioWidth, ratioHeight) + precision);
+            size = autofitInRange(mTextView, measuredText, mPaint, probes, mMaxLines, precision,
+                    mAdaptDirection, lower, upper);
+            if (size >= upper - precision && upper < mMaxTextSize) {
+                size = autofitInRange(mTextView, measuredText, mPaint, probes, mMaxLines,
+                        precision, mAdaptDirection, upper, mMaxTextSize);
+            }
+        } else if (ratioWidth <= 1 && ratioHeight <= 1) {
+            // The last size is an upper bound, only the lower end is estimated
+            upper = mLastFitSize;
+            lower = Math.max(0, mLastFitSize * Math.min(ratioWidth, ratioHeight) - precision);
+            size = autofitInRange(mTextView, measuredText, mPaint, probes, mMaxLines, precision,
+                    mAdaptDirection, lower, upper);
+            if (size <= lower + precision && lower > 0) {
+                size = autofitInRange(mTextView, measuredText, mPaint, probes, mMaxLines,
+                        precision, mAdaptDirection, 0, lower);
+            }
+        } else {
+            size = -1;
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether fits after a change of bounds are bracketed from the previous fit.
+     */
+    public boolean isResizeTracking() {
+        return mResizeTracking;
+    }
+
+    /**
+     * Set whether fits after a change of bounds are bracketed from the previous fit. The text
+     * size grows and shrinks with the bounds, so the previous (bounds, size) pair bounds the new
+     * size from one side and the change ratio estimates the other. Useful while the bounds change
+     * every frame, e.g. split-screen drags, posture changes and expand/collapse animations.
+     */
+    public AutofitDirectionHelper setResizeTracking(boolean resizeTracking) {
+        if (mResizeTracking != resizeTracking) {
+            mResizeTracking = resizeTracking;
+            if (!resizeTracking) {
+                mTextView.removeCallbacks(mSettleRunnable);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the delay after the last change of bounds before the settle fit, 0 if disabled.
+     */
+    public long getResizeSettleDelay() {
+        return mResizeSettleDelay;
+    }
+
+    /**
+     * Set the delay (in milliseconds) after the last change of bounds before a settle fit runs.
+     * With a delay set, tracked fits use a coarser precision and the settle fit searches the full
+     * range at the regular precision once the resize stops. 0 disables settling.
+     */
+    public AutofitDirectionHelper setResizeSettleDelay(long delayMillis) {
+        mResizeSettleDelay = Math.max(0, delayMillis);
+        return this;
+    }
+
+    /**
+     * 渲染缩放模式下文本按最大字号排版，只在绘制时缩放，避免 setTextSize 引起的重新布局
+     */
+    private void applyTextSize(float size) {
+        if (isRenderScaling()) {
+            if (mTextView.getTextSize() != mMaxTextSize) {
+                // Laid out once at the max size, later fits only change the draw scale
+                mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mMaxTextSize);
+            }
+            setRenderScaleFactor(size / mMaxTextSize);
+        } else {
+            setRenderScaleFactor(1f);
+            mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, size);
+        }
+    }
+
+    /**
+     * 只有水平滚动、不省略的单行文本才能绘制时缩放：否则按最大字号排版得到的换行和省略位置与实际字号下不同
+     */
+    private boolean isRenderScaling() {
+        return mRenderScale && mMaxLines == 1 && mMaxTextSize > 0
+                && mTextView.getEllipsize() == null
+                && isHorizontallyScrolling(mTextView);
+    }
+
+    private static boolean isHorizontallyScrolling(TextView view) {
+        // setSingleLine() turns on horizontal scrolling along with this transformation.
+        // TextView#isHorizontallyScrollable() would be exact, but it needs API 29.
+        return view.getTransformationMethod() instanceof SingleLineTransformationMethod;
+    }
+
+    private void setRenderScaleFactor(float factor) {
+        if (mRenderScaleFactor != factor) {
+            mRenderScaleFactor = factor;
+            mTextView.invalidate();
+        }
+    }
+
+    /**
+     * Returns the text size the text is drawn at, including the render scale.
+     */
+    private float getEffectiveTextSize() {
+        return mTextView.getTextSize() * mRenderScaleFactor;
+    }
+
+    /**
+     * Returns whether fits are applied by scaling the canvas instead of changing the text size.
+     */
+    boolean isRenderScale() {
+        return mRenderScale;
+    }
+
+    /**
+     * Set whether fits are applied by scaling the canvas instead of changing the text size. Only
+     * single-line text that scrolls horizontally and isn't ellipsized is scaled, other text keeps
+     * changing its text size. The TextView must apply {@link #getRenderScaleFactor()} when
+     * drawing, see {@link AutofitDirectionTextView}.
+     */
+    void setRenderScale(boolean renderScale) {
+        if (mRenderScale != renderScale) {
+            mRenderScale = renderScale;
+
+            autofit();
+        }
+    }
+
+    /**
+     * Returns the factor the TextView has to scale its text by when drawing.
+     */
+    float getRenderScaleFactor() {
+        return mRenderScaleFactor;
     }
 
     private void sendTextSizeChange(float textSize, float oldTextSize) {
@@ -612,18 +1706,29 @@ public class AutofitDirectionHelper {
             return;
         }
 
-        for (OnTextSizeChangeListener listener : mListeners) {
-            listener.onTextSizeChange(textSize, oldTextSize);
+        // Indexed loop, an iterator would be allocated on every change
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onTextSizeChange(textSize, oldTextSize);
         }
     }
 
-    private class AutofitDirectionTextWatcher implements TextWatcher {
+    /**
+     * The watcher the helper registers on its TextView. {@link AutofitDirectionTextView} detects
+     * it by type and dispatches to it directly.
+     */
+    class AutofitDirectionTextWatcher implements TextWatcher {
         @Override
         public void beforeTextChanged(CharSequence charSequence, int start, int count, int after) {
         }
 
         @Override
         public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
+            if (!mIsAutofitting) {
+                // The text was replaced from outside, drop the untruncated copy
+                mFullText = null;
+                // An Editable keeps its identity while being edited
+                mMeasuredText.invalidate();
+            }
             autofit();
         }
 
@@ -632,6 +1737,22 @@ public class AutofitDirectionHelper {
         }
     }
 
+    private static class ProbeTask implements Callable<Integer> {
+        private final AutofitProbe mProbe;
+        private final int mAdaptDirection;
+        private float mSize;
+
+        ProbeTask(AutofitProbe probe, int adaptDirection) {
+            mProbe = probe;
+            mAdaptDirection = adaptDirection;
+        }
+
+        @Override
+        public Integer call() {
+            return mProbe.compare(mAdaptDirection, mSize);
+        }
+    }
+
     private class AutofitOnLayoutChangeListener implements View.OnLayoutChangeListener {
         @Override
         public void onLayoutChange(View view, int left, int top, int right, int bottom,
@@ -640,6 +1761,136 @@ public class AutofitDirectionHelper {
         }
     }
 
+    private class AutofitOnAttachStateChangeListener implements View.OnAttachStateChangeListener {
+        @Override
+        public void onViewAttachedToWindow(View view) {
+            startListening();
+            // Only fits if the view kept its size from a previous attachment
+            autofit();
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View view) {
+            mTextView.removeCallbacks(mSettleRunnable);
+            if (mScheduled) {
+                AutofitScheduler.getInstance().cancel(AutofitDirectionHelper.this);
+            }
+        }
+    }
+
+    /**
+     * Checks sizes with real layouts of a probe, in the fit's directions.
+     */
+    private final class ProbeCheck extends AutofitSizeCheck {
+        AutofitProbe mProbe;
+
+        @Override
+        boolean fits(float size) {
+            return fitsAt(mProbe, size);
+        }
+    }
+
+    /**
+     * The cost of the last fit run by an {@code AutofitHelper}, plus running totals. Tests use it
+     * to hold the number of probes and layouts per fit to a budget.
+     */
+    public static final class FitStats {
+        private int mProbeCount;
+        private int mLayoutCount;
+        private long mDurationNanos;
+        private int mAdaptDirection;
+        private boolean mCacheHit;
+        private int mFitCount;
+        private int mTextSizeChangeCount;
+        private long mTotalDurationNanos;
+
+        void record(AutofitProbe[] probes, long durationNanos, int adaptDirection,
+                boolean cacheHit, boolean textSizeChanged) {
+            int probeCount = 0;
+            int layoutCount = 0;
+            for (AutofitProbe probe : probes) {
+                probeCount += probe.getProbeCount();
+                layoutCount += probe.getLayoutCount();
+            }
+            mProbeCount = probeCount;
+            mLayoutCount = layoutCount;
+            mDurationNanos = durationNanos;
+            mAdaptDirection = adaptDirection;
+            mCacheHit = cacheHit;
+            mFitCount++;
+            mTotalDurationNanos += durationNanos;
+            if (textSizeChanged) {
+                mTextSizeChangeCount++;
+            }
+        }
+
+        /**
+         * Returns the number of text sizes the last fit tried.
+         */
+        public int getProbeCount() {
+            return mProbeCount;
+        }
+
+        /**
+         * Returns the number of {@link StaticLayout}s the last fit built.
+         */
+        public int getLayoutCount() {
+            return mLayoutCount;
+        }
+
+        /**
+         * Returns how long the last fit took, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        /**
+         * Returns the direction the last fit adapted to.
+         */
+        public int getAdaptDirection() {
+            return mAdaptDirection;
+        }
+
+        /**
+         * Returns whether the last fit was served from a cache instead of a search.
+         */
+        public boolean isCacheHit() {
+            return mCacheHit;
+        }
+
+        /**
+         * Returns the number of fits run so far.
+         */
+        public int getFitCount() {
+            return mFitCount;
+        }
+
+        /**
+         * Returns the number of fits that changed the text size, each of which relayouts the
+         * TextView.
+         */
+        public int getTextSizeChangeCount() {
+            return mTextSizeChangeCount;
+        }
+
+        /**
+         * Returns the time spent in all fits so far, in nanoseconds.
+         */
+        public long getTotalDurationNanos() {
+            return mTotalDurationNanos;
+        }
+
+        /**
+         * Resets the running totals.
+         */
+        public void reset() {
+            mFitCount = 0;
+            mTextSizeChangeCount = 0;
+            mTotalDurationNanos = 0;
+        }
+    }
+
     /**
      * When an object of a type is attached to an {@code AutofitHelper}, its methods will be called
      * when the {@code textSize} is changed.
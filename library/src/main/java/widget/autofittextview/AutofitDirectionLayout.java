@@ -2,6 +2,7 @@ package widget.autofittextview;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.View;
@@ -9,8 +10,6 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
-import java.util.WeakHashMap;
-
 import me.grantland.widget.R;
 
 /**
@@ -28,7 +27,17 @@ public class AutofitDirectionLayout extends FrameLayout {
     private float mMinTextSize;
     private float mPrecision;
     private int mAdaptDirection;
-    private WeakHashMap<View, AutofitDirectionHelper> mHelpers = new WeakHashMap<View, AutofitDirectionHelper>();
+    // Only created while the debug overlay is on
+    private AutofitDebugOverlay mDebugOverlay;
+    // A child's fit doesn't re-record our display list, the overlay would show the previous fit
+    private final Runnable mChildFitCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (mDebugOverlay != null) {
+                invalidate();
+            }
+        }
+    };
 
     public AutofitDirectionLayout(Context context) {
         super(context);
@@ -50,6 +59,7 @@ public class AutofitDirectionLayout extends FrameLayout {
         int minTextSize = -1;
         float precision = -1;
         int adaptDirection = AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH;
+        boolean debugOverlay = false;
 
         if (attrs != null) {
             TypedArray ta = context.obtainStyledAttributes(attrs,
@@ -59,6 +69,8 @@ public class AutofitDirectionLayout extends FrameLayout {
                     minTextSize);
             precision = ta.getFloat(R.styleable.AutofitDirectionTextView_precision, precision);
             adaptDirection = ta.getInt(R.styleable.AutofitDirectionTextView_adaptDirection, adaptDirection);
+            debugOverlay = ta.getBoolean(R.styleable.AutofitDirectionTextView_debugOverlay,
+                    debugOverlay);
             ta.recycle();
         }
 
@@ -66,11 +78,50 @@ public class AutofitDirectionLayout extends FrameLayout {
         mMinTextSize = minTextSize;
         mPrecision = precision;
         mAdaptDirection = adaptDirection;
+        setDebugOverlay(debugOverlay);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mDebugOverlay == null) {
+            return;
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            AutofitDirectionHelper helper = getAutofitHelper(child);
+            if (helper != null && child.getVisibility() == VISIBLE) {
+                mDebugOverlay.draw(canvas, child.getLeft(), child.getTop(), helper.getFitStats());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the cost of the last fit of each child is drawn over it.
+     */
+    public boolean isDebugOverlay() {
+        return mDebugOverlay != null;
+    }
+
+    /**
+     * If true, the direction, probe and layout counts, time and cache hit or miss of the last fit
+     * of each child are drawn over the child.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_debugOverlay
+     */
+    public void setDebugOverlay(boolean debugOverlay) {
+        if (debugOverlay != isDebugOverlay()) {
+            mDebugOverlay = debugOverlay ? new AutofitDebugOverlay(getContext()) : null;
+            invalidate();
+        }
     }
 
     @Override
     public void addView(View child, int index, ViewGroup.LayoutParams params) {
         super.addView(child, index, params);
+        if (!(child instanceof TextView)) {
+            return;
+        }
         TextView textView = (TextView) child;
         AutofitDirectionHelper helper = AutofitDirectionHelper.create(textView)
                 .setEnabled(mEnabled);
@@ -80,20 +131,41 @@ public class AutofitDirectionLayout extends FrameLayout {
         if (mMinTextSize > 0) {
             helper.setMinTextSize(TypedValue.COMPLEX_UNIT_PX, mMinTextSize);
         }
-        mHelpers.put(textView, helper);
+        helper.setFitCallback(mChildFitCallback);
+        // Kept on the child rather than in a map, so the helper lives exactly as long as its view
+        textView.setTag(R.id.autofit_helper, helper);
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        AutofitDirectionHelper helper = getAutofitHelper(child);
+        if (helper != null) {
+            child.setTag(R.id.autofit_helper, null);
+            helper.setFitCallback(null);
+            helper.release();
+        }
     }
 
     /**
      * Returns the {@link AutofitDirectionHelper} for this child View.
      */
     public AutofitDirectionHelper getAutofitHelper(TextView textView) {
-        return mHelpers.get(textView);
+        return getAutofitHelper((View) textView);
     }
 
     /**
      * Returns the {@link AutofitDirectionHelper} for this child View.
      */
     public AutofitDirectionHelper getAutofitHelper(int index) {
-        return mHelpers.get(getChildAt(index));
+        return getAutofitHelper(getChildAt(index));
+    }
+
+    private static AutofitDirectionHelper getAutofitHelper(View child) {
+        if (child == null) {
+            return null;
+        }
+        Object helper = child.getTag(R.id.autofit_helper);
+        return helper instanceof AutofitDirectionHelper ? (AutofitDirectionHelper) helper : null;
     }
 }
@@ -1,13 +1,21 @@
 package widget.autofittextview;
 
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.TypedValue;
+import android.view.AbsSavedState;
+import android.view.Gravity;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+
+import me.grantland.widget.R;
 
 /**
  * A {@link TextView} that re-sizes its text to be no larger than the width of the view.
@@ -16,10 +24,20 @@ import java.util.ArrayList;
  * @attr ref R.styleable.AutofitDirectionHelper_minTextSize
  * @attr ref R.styleable.AutofitDirectionHelper_precision
  * @attr ref R.styleable.AutofitDirectionTextView_adaptDirection
+ * @attr ref R.styleable.AutofitDirectionTextView_ellipsizeFallback
  */
 public class AutofitDirectionTextView extends TextView implements AutofitDirectionHelper.OnTextSizeChangeListener {
     private AutofitDirectionHelper mHelper;
-    private ArrayList<TextWatcher> mListeners;
+    // Only created while the debug overlay is on
+    private AutofitDebugOverlay mDebugOverlay;
+    /**
+     * The helper's own watchers, dispatched to directly from {@link #onTextChanged}. Copied on
+     * write, so dispatching never allocates.
+     */
+    private AutofitDirectionHelper.AutofitDirectionTextWatcher[] mAutofitWatchers = EMPTY_WATCHERS;
+
+    private static final AutofitDirectionHelper.AutofitDirectionTextWatcher[] EMPTY_WATCHERS =
+            new AutofitDirectionHelper.AutofitDirectionTextWatcher[0];
 
     public AutofitDirectionTextView(Context context) {
         super(context);
@@ -38,6 +56,102 @@ public class AutofitDirectionTextView extends TextView implements AutofitDirecti
 
     private void init(Context context, AttributeSet attrs, int defStyle) {
         mHelper = AutofitDirectionHelper.create(this, attrs, defStyle).addOnTextSizeChangeListener(this);
+
+        if (attrs != null) {
+            TypedArray ta = context.obtainStyledAttributes(attrs,
+                    R.styleable.AutofitDirectionTextView, defStyle, 0);
+            boolean renderScale = ta.getBoolean(R.styleable.AutofitDirectionTextView_renderScale,
+                    false);
+            boolean debugOverlay = ta.getBoolean(R.styleable.AutofitDirectionTextView_debugOverlay,
+                    false);
+            ta.recycle();
+
+            mHelper.setRenderScale(renderScale);
+            setDebugOverlay(debugOverlay);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float scale = mHelper != null ? mHelper.getRenderScaleFactor() : 1f;
+        if (scale == 1f) {
+            super.onDraw(canvas);
+            return;
+        }
+
+        // Scale around the point the gravity anchors the text to
+        int left = getPaddingLeft();
+        int right = getWidth() - getPaddingRight();
+        int top = getPaddingTop();
+        int bottom = getHeight() - getPaddingBottom();
+        int gravity = Gravity.getAbsoluteGravity(getGravity(), getLayoutDirection());
+        float pivotX;
+        switch (gravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+            case Gravity.CENTER_HORIZONTAL:
+                pivotX = (left + right) / 2f;
+                break;
+            case Gravity.RIGHT:
+                pivotX = right;
+                break;
+            default:
+                pivotX = left;
+                break;
+        }
+        float pivotY;
+        switch (gravity & Gravity.VERTICAL_GRAVITY_MASK) {
+            case Gravity.CENTER_VERTICAL:
+                pivotY = (top + bottom) / 2f;
+                break;
+            case Gravity.BOTTOM:
+                pivotY = bottom;
+                break;
+            default:
+                pivotY = top;
+                break;
+        }
+
+        int saveCount = canvas.save();
+        canvas.scale(scale, scale, pivotX + getScrollX(), pivotY + getScrollY());
+        super.onDraw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        float size = mHelper.getLastFitSize();
+        if (size < 0) {
+            return superState;
+        }
+
+        SavedState state = new SavedState(superState != null ? superState : AbsSavedState.EMPTY_STATE);
+        state.textHash = mHelper.getFitTextHash();
+        state.width = mHelper.getLastFitWidth();
+        state.height = mHelper.getLastFitHeight();
+        state.configHash = mHelper.getFitConfigHash();
+        state.size = size;
+        return state;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        // After the text is restored, so the saved fit is matched against the restored text
+        mHelper.restoreFit(ss.textHash, ss.width, ss.height, ss.configHash, ss.size);
+    }
+
+    @Override
+    public void onDrawForeground(Canvas canvas) {
+        super.onDrawForeground(canvas);
+        if (mDebugOverlay != null) {
+            mDebugOverlay.draw(canvas, getScrollX(), getScrollY(), mHelper.getFitStats());
+        }
     }
 
     // Getters and Setters
@@ -189,6 +303,99 @@ public class AutofitDirectionTextView extends TextView implements AutofitDirecti
         mHelper.setPrecision(precision);
     }
 
+    /**
+     * Returns whether text that does not fit at the minimum text size is truncated with an
+     * ellipsis.
+     */
+    public boolean isEllipsizeFallback() {
+        return mHelper.isEllipsizeFallback();
+    }
+
+    /**
+     * If true, text that does not fit even at the minimum text size is truncated with an
+     * ellipsis instead of overflowing the view.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_ellipsizeFallback
+     */
+    public void setEllipsizeFallback(boolean ellipsize) {
+        mHelper.setEllipsizeFallback(ellipsize);
+    }
+
+    /**
+     * Returns whether the line count is chosen by the fit when maxLines is not set.
+     */
+    public boolean isAutoMaxLines() {
+        return mHelper.isAutoMaxLines();
+    }
+
+    /**
+     * If true, text without a maxLines limit is fitted to the height at whatever line count
+     * results.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_autoMaxLines
+     */
+    public void setAutoMaxLines(boolean autoMaxLines) {
+        mHelper.setAutoMaxLines(autoMaxLines);
+    }
+
+    /**
+     * Returns whether fits the platform autosize engine handles equivalently are delegated to it.
+     */
+    public boolean isPreferPlatformAutoSize() {
+        return mHelper.isPreferPlatformAutoSize();
+    }
+
+    /**
+     * If true, fits the platform autosize engine can express equivalently are delegated to it.
+     *
+     * @see AutofitDirectionHelper#setPreferPlatformAutoSize(boolean)
+     */
+    public void setPreferPlatformAutoSize(boolean preferPlatformAutoSize) {
+        mHelper.setPreferPlatformAutoSize(preferPlatformAutoSize);
+    }
+
+    /**
+     * Returns whether size changes are drawn by scaling the canvas instead of changing the text
+     * size.
+     */
+    public boolean isRenderScale() {
+        return mHelper.isRenderScale();
+    }
+
+    /**
+     * If true, single-line text is laid out once at the max text size and fitted by scaling the
+     * canvas when drawing. Size changes then only redraw the view, no relayout is requested,
+     * which suits animated and rapidly updating labels. Only applies to text that scrolls
+     * horizontally, as set by {@link #setSingleLine()}, and has no ellipsize: line breaks and
+     * ellipsis found at the max size would be wrong at the fitted size. Other text keeps changing
+     * its text size.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_renderScale
+     */
+    public void setRenderScale(boolean renderScale) {
+        mHelper.setRenderScale(renderScale);
+    }
+
+    /**
+     * Returns whether the cost of the last fit is drawn over the view.
+     */
+    public boolean isDebugOverlay() {
+        return mDebugOverlay != null;
+    }
+
+    /**
+     * If true, the direction, probe and layout counts, time and cache hit or miss of the last fit
+     * are drawn over the view, to find expensive views while hunting jank.
+     *
+     * @attr ref me.grantland.R.styleable#AutofitDirectionTextView_debugOverlay
+     */
+    public void setDebugOverlay(boolean debugOverlay) {
+        if (debugOverlay != isDebugOverlay()) {
+            mDebugOverlay = debugOverlay ? new AutofitDebugOverlay(getContext()) : null;
+            invalidate();
+        }
+    }
+
     @Override
     public void onTextSizeChange(float textSize, float oldTextSize) {
         // do nothing
@@ -199,12 +406,12 @@ public class AutofitDirectionTextView extends TextView implements AutofitDirecti
         if (watcher == null) {
             return;
         }
-        if (watcher.getClass().getSimpleName().contains("AutofitDirectionTextWatcher")) {
-            if (mListeners == null) {
-                mListeners = new ArrayList<TextWatcher>();
-            }
-            if (!mListeners.contains(watcher)) {
-                mListeners.add(watcher);
+        if (watcher instanceof AutofitDirectionHelper.AutofitDirectionTextWatcher) {
+            if (indexOfAutofitWatcher(watcher) < 0) {
+                AutofitDirectionHelper.AutofitDirectionTextWatcher[] watchers =
+                        Arrays.copyOf(mAutofitWatchers, mAutofitWatchers.length + 1);
+                watchers[watchers.length - 1] = (AutofitDirectionHelper.AutofitDirectionTextWatcher) watcher;
+                mAutofitWatchers = watchers;
             }
         } else {
             super.addTextChangedListener(watcher);
@@ -216,12 +423,14 @@ public class AutofitDirectionTextView extends TextView implements AutofitDirecti
         if (watcher == null) {
             return;
         }
-        if (watcher.getClass().getSimpleName().contains("AutofitDirectionTextWatcher")) {
-            if (mListeners != null) {
-                int i = mListeners.indexOf(watcher);
-                if (i >= 0) {
-                    mListeners.remove(i);
-                }
+        if (watcher instanceof AutofitDirectionHelper.AutofitDirectionTextWatcher) {
+            int i = indexOfAutofitWatcher(watcher);
+            if (i >= 0) {
+                AutofitDirectionHelper.AutofitDirectionTextWatcher[] watchers =
+                        new AutofitDirectionHelper.AutofitDirectionTextWatcher[mAutofitWatchers.length - 1];
+                System.arraycopy(mAutofitWatchers, 0, watchers, 0, i);
+                System.arraycopy(mAutofitWatchers, i + 1, watchers, i, watchers.length - i);
+                mAutofitWatchers = watchers;
             }
         } else {
             super.removeTextChangedListener(watcher);
@@ -235,13 +444,76 @@ public class AutofitDirectionTextView extends TextView implements AutofitDirecti
     }
 
     private void callAutoFit(CharSequence text, int start, int before, int after) {
-        if (mListeners == null) {
+        // Called from the TextView constructor, before our fields are initialized
+        if (mAutofitWatchers == null) {
             return;
         }
-        final ArrayList<TextWatcher> list = new ArrayList<>(mListeners);
-        final int count = list.size();
-        for (int i = 0; i < count; i++) {
-            list.get(i).onTextChanged(text, start, before, after);
+        // A watcher removing itself replaces the array, this loop keeps the old one
+        final AutofitDirectionHelper.AutofitDirectionTextWatcher[] watchers = mAutofitWatchers;
+        for (int i = 0; i < watchers.length; i++) {
+            watchers[i].onTextChanged(text, start, before, after);
+        }
+    }
+
+    /**
+     * The last fit and what it was computed for, so a recreated view shows the fitted size
+     * right away.
+     */
+    static class SavedState extends BaseSavedState {
+        int textHash;
+        int width;
+        int height;
+        int configHash;
+        float size;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in, ClassLoader loader) {
+            super(in, loader);
+            textHash = in.readInt();
+            width = in.readInt();
+            height = in.readInt();
+            configHash = in.readInt();
+            size = in.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(textHash);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(configHash);
+            out.writeFloat(size);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.ClassLoaderCreator<SavedState>() {
+                    @Override
+                    public SavedState createFromParcel(Parcel in, ClassLoader loader) {
+                        return new SavedState(in, loader);
+                    }
+
+                    @Override
+                    public SavedState createFromParcel(Parcel in) {
+                        return new SavedState(in, null);
+                    }
+
+                    @Override
+                    public SavedState[] newArray(int size) {
+                        return new SavedState[size];
+                    }
+                };
+    }
+
+    private int indexOfAutofitWatcher(TextWatcher watcher) {
+        for (int i = 0; i < mAutofitWatchers.length; i++) {
+            if (mAutofitWatchers[i] == watcher) {
+                return i;
+            }
         }
+        return -1;
     }
 }
@@ -0,0 +1,197 @@
+package widget.autofittextview;
+
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.method.TransformationMethod;
+import android.text.style.MetricAffectingSpan;
+import android.view.View;
+
+/**
+ * The size independent analysis of a text, computed once per text and shared by every probe of
+ * a fit: the transformed text, whether its spans affect measuring and its paragraph ranges.
+ *
+ * <p>Only unstyled text gets faster: text with spans that affect measuring is still laid out
+ * with its spans by every probe, which splits it into style runs again each time.
+ */
+final class AutofitMeasuredText {
+    // Drops the analysis when a span that affects measuring changes on the source, null when
+    // the analysis is only used once per text
+    private final SpanWatcher mSpanWatcher;
+    private Spannable mWatchedSource;
+
+    private CharSequence mSource;
+    private TransformationMethod mMethod;
+    private int mSourceLength;
+    // Changes whenever the analysis is replaced or dropped
+    private int mGeneration;
+
+    private CharSequence mText;
+    private CharSequence mProbeText;
+    private boolean mHasMetricAffectingSpans;
+    private int mParagraphCount;
+    // Reused across texts, only grown when a text has more paragraphs
+    private int[] mParagraphStarts = new int[1];
+    private int[] mParagraphEnds = new int[1];
+
+    AutofitMeasuredText() {
+        this(false);
+    }
+
+    /**
+     * @param watchSpans whether to watch Spannable sources for span changes, for analyses that
+     * are reused as long as the source keeps its identity.
+     */
+    AutofitMeasuredText(boolean watchSpans) {
+        mSpanWatcher = watchSpans ? new SourceSpanWatcher() : null;
+    }
+
+    /**
+     * Analyzes {@code source} shown through {@code method}, replacing the previous analysis.
+     */
+    void set(CharSequence source, TransformationMethod method, View view) {
+        watch(source);
+        mGeneration++;
+        mSource = source;
+        mMethod = method;
+        mSourceLength = source.length();
+
+        CharSequence text = source;
+        if (method != null) {
+            text = method.getTransformation(text, view);
+        }
+        mText = text;
+
+        mHasMetricAffectingSpans = text instanceof Spanned
+                && ((Spanned) text).nextSpanTransition(0, text.length(), MetricAffectingSpan.class)
+                < text.length();
+        // Spans that only change how glyphs are drawn don't change the layout, so probes can skip
+        // the span handling altogether.
+        mProbeText = mHasMetricAffectingSpans ? text : text.toString();
+
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        if (mParagraphStarts.length < count) {
+            mParagraphStarts = new int[count];
+            mParagraphEnds = new int[count];
+        }
+        mParagraphCount = count;
+        mParagraphStarts[0] = 0;
+        int paragraph = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                mParagraphEnds[paragraph] = i;
+                mParagraphStarts[++paragraph] = i + 1;
+            }
+        }
+        mParagraphEnds[paragraph] = text.length();
+    }
+
+    /**
+     * Drops the analysis, for texts that changed without changing identity.
+     */
+    void invalidate() {
+        mGeneration++;
+        mSource = null;
+        mText = null;
+        mProbeText = null;
+    }
+
+    /**
+     * Drops the analysis and stops watching the source.
+     */
+    void release() {
+        invalidate();
+        watch(null);
+    }
+
+    private void watch(CharSequence source) {
+        if (mSpanWatcher == null || source == mWatchedSource) {
+            return;
+        }
+        if (mWatchedSource != null) {
+            mWatchedSource.removeSpan(mSpanWatcher);
+            mWatchedSource = null;
+        }
+        if (source instanceof Spannable) {
+            mWatchedSource = (Spannable) source;
+            mWatchedSource.setSpan(mSpanWatcher, 0, source.length(),
+                    Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        }
+    }
+
+    /**
+     * Returns whether this analysis is still valid for {@code source} shown through
+     * {@code method}. Spans changed on a watched source invalidate it.
+     */
+    boolean isFor(CharSequence source, TransformationMethod method) {
+        return mSource == source && mMethod == method && mSourceLength == source.length();
+    }
+
+    /**
+     * Returns a number that changes every time the analyzed text changes.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns the transformed text, with its original styling.
+     */
+    CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * Returns the text to lay out while probing. It is a plain {@link String} unless the spans
+     * of the text affect measuring.
+     */
+    CharSequence getProbeText() {
+        return mProbeText;
+    }
+
+    boolean hasMetricAffectingSpans() {
+        return mHasMetricAffectingSpans;
+    }
+
+    int getParagraphCount() {
+        return mParagraphCount;
+    }
+
+    int getParagraphStart(int paragraph) {
+        return mParagraphStarts[paragraph];
+    }
+
+    int getParagraphEnd(int paragraph) {
+        return mParagraphEnds[paragraph];
+    }
+
+    private final class SourceSpanWatcher implements SpanWatcher {
+        @Override
+        public void onSpanAdded(Spannable text, Object what, int start, int end) {
+            onSpanChanged(text, what);
+        }
+
+        @Override
+        public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+            onSpanChanged(text, what);
+        }
+
+        @Override
+        public void onSpanChanged(Spannable text, Object what, int oldStart, int oldEnd,
+                int start, int end) {
+            onSpanChanged(text, what);
+        }
+
+        private void onSpanChanged(Spannable text, Object what) {
+            // Spans that only change how glyphs are drawn don't change the analysis
+            if (text == mSource && what instanceof MetricAffectingSpan) {
+                invalidate();
+            }
+        }
+    }
+}
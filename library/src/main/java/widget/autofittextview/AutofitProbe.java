@@ -0,0 +1,215 @@
+package widget.autofittextview;
+
+import android.graphics.Paint;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+/**
+ * Lays out the text at a candidate text size and tells whether it is too large or too small for
+ * the target bounds. Each probe owns its paint, so several probes can be evaluated at once on
+ * different threads.
+ */
+final class AutofitProbe {
+    private final TextPaint mPaint = new TextPaint();
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final float[] mPredictedWidth = new float[1];
+
+    private AutofitMeasuredText mText;
+    private float mTargetWidth;
+    private float mTargetHeight;
+    private int mMaxLines;
+    // Predicts layouts from glyph advances instead of building them, when set
+    private AutofitAdvanceTable mAdvances;
+    private boolean mBreakAnywhere;
+
+    private int mProbeCount;
+    private int mLayoutCount;
+    private float mMaxLineWidth;
+
+    /**
+     * Prepares this probe for a fit. {@code paint} is copied, later changes to it are not seen.
+     */
+    void set(AutofitMeasuredText text, TextPaint paint, float targetWidth, float targetHeight,
+            int maxLines) {
+        mText = text;
+        mPaint.set(paint);
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mMaxLines = maxLines;
+    }
+
+    /**
+     * Releases the text so it isn't kept alive between fits.
+     */
+    void clear() {
+        mText = null;
+        mAdvances = null;
+    }
+
+    /**
+     * Makes {@link #compare(int, float)} and {@link #getLineCount(float)} predict line breaks
+     * from {@code advances} instead of laying the text out, or lay it out again if {@code null}.
+     * The text must be one {@link AutofitAdvanceTable#canPredict(CharSequence)} accepts.
+     */
+    void setAdvanceTable(AutofitAdvanceTable advances) {
+        mAdvances = advances;
+        mBreakAnywhere = advances != null && AutofitAdvanceTable.isCjkText(mText.getProbeText());
+    }
+
+    void resetCounters() {
+        mProbeCount = 0;
+        mLayoutCount = 0;
+    }
+
+    /**
+     * Returns the number of sizes probed since the last {@link #resetCounters()}.
+     */
+    int getProbeCount() {
+        return mProbeCount;
+    }
+
+    /**
+     * Returns the number of layouts built since the last {@link #resetCounters()}.
+     */
+    int getLayoutCount() {
+        return mLayoutCount;
+    }
+
+    /**
+     * Returns the font metrics at {@code size}. The returned object is reused by this probe.
+     */
+    Paint.FontMetrics getFontMetrics(float size) {
+        mPaint.setTextSize(size);
+        mPaint.getFontMetrics(mFontMetrics);
+        return mFontMetrics;
+    }
+
+    /**
+     * Returns the height of {@code lines} lines at {@code size}, as the height search measures it.
+     */
+    float getHeight(float size, int lines) {
+        Paint.FontMetrics fm = getFontMetrics(size);
+        return fm.bottom - fm.ascent + (fm.leading + fm.bottom - fm.top) * (lines - 1);
+    }
+
+    int getLineCount(float size) {
+        mProbeCount++;
+        mPaint.setTextSize(size);
+
+        if (mAdvances != null) {
+            return predictLineCount(Integer.MAX_VALUE, size);
+        }
+
+        int lineCount = 0;
+        mMaxLineWidth = 0;
+        for (int i = 0; i < mText.getParagraphCount(); i++) {
+            StaticLayout layout = newLayout(i, Integer.MAX_VALUE);
+            int paragraphLines = layout.getLineCount();
+            for (int line = 0; line < paragraphLines; line++) {
+                mMaxLineWidth = Math.max(mMaxLineWidth, layout.getLineWidth(line));
+            }
+            lineCount += paragraphLines;
+        }
+        return lineCount;
+    }
+
+    /**
+     * Returns the width of the widest line seen by the last {@link #getLineCount(float)}.
+     */
+    float getMaxLineWidth() {
+        return mMaxLineWidth;
+    }
+
+    /**
+     * 比较给定字号下的文本与目标边界
+     *
+     * @return a positive value if the text is too large at {@code size}, a negative value if it
+     * is too small and 0 if it matches the target exactly.
+     */
+    int compare(int adaptDirection, float size) {
+        int lineCount = 1;
+        float maxLineWidth = 0;
+
+        mProbeCount++;
+        mPaint.setTextSize(size);
+
+        if (mMaxLines != 1 && mAdvances != null) {
+            lineCount = predictLineCount(mMaxLines, size);
+            maxLineWidth = mMaxLineWidth;
+        } else if (mMaxLines != 1) {
+            // Paragraphs are laid out one by one and we stop as soon as there are more lines
+            // than allowed, the widths are only needed when the line count matches.
+            lineCount = 0;
+            for (int i = 0; i < mText.getParagraphCount() && lineCount <= mMaxLines; i++) {
+                StaticLayout layout = newLayout(i, mMaxLines - lineCount + 1);
+                int paragraphLines = layout.getLineCount();
+                for (int line = 0; line < paragraphLines; line++) {
+                    if (layout.getLineWidth(line) > maxLineWidth) {
+                        maxLineWidth = layout.getLineWidth(line);
+                    }
+                }
+                lineCount += paragraphLines;
+            }
+        }
+
+        if (lineCount > mMaxLines) {
+            // For the case that `text` has more newline characters than `maxLines`.
+            return 1;
+        } else if (lineCount < mMaxLines) {
+            return -1;
+        }
+
+        if (adaptDirection == AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT) {
+            Paint.FontMetrics fm = mFontMetrics;
+            mPaint.getFontMetrics(fm);
+            float realHeight = fm.bottom - fm.ascent
+                    + (fm.leading + fm.bottom - fm.top) * (lineCount - 1);
+            return Float.compare(realHeight, mTargetHeight);
+        }
+
+        if (mMaxLines == 1) {
+            CharSequence text = mText.getProbeText();
+            maxLineWidth = mAdvances != null
+                    ? mAdvances.measure(text, 0, text.length(), size)
+                    : mPaint.measureText(text, 0, text.length());
+        }
+        return Float.compare(maxLineWidth, mTargetWidth);
+    }
+
+    // Stops once more than maxLines lines are found, like the real layouts
+    private int predictLineCount(int maxLines, float size) {
+        CharSequence text = mText.getProbeText();
+        int lineCount = 0;
+        mPredictedWidth[0] = 0;
+        for (int i = 0; i < mText.getParagraphCount() && lineCount <= maxLines; i++) {
+            lineCount += mAdvances.breakParagraph(text, mText.getParagraphStart(i),
+                    mText.getParagraphEnd(i), size, (int) mTargetWidth, mBreakAnywhere,
+                    mPredictedWidth);
+        }
+        mMaxLineWidth = mPredictedWidth[0];
+        return lineCount;
+    }
+
+    /**
+     * Lays out the whole text at {@code size}, with its original styling.
+     */
+    StaticLayout getLayout(float size) {
+        mLayoutCount++;
+        mPaint.setTextSize(size);
+        CharSequence text = mText.getText();
+        return StaticLayout.Builder.obtain(text, 0, text.length(), mPaint, (int) mTargetWidth)
+                .setLineSpacing(0.0f, 1.0f)
+                .setIncludePad(true)
+                .build();
+    }
+
+    private StaticLayout newLayout(int paragraph, int maxLines) {
+        mLayoutCount++;
+        return StaticLayout.Builder.obtain(mText.getProbeText(), mText.getParagraphStart(paragraph),
+                mText.getParagraphEnd(paragraph), mPaint, (int) mTargetWidth)
+                .setLineSpacing(0.0f, 1.0f)
+                .setIncludePad(true)
+                .setMaxLines(maxLines)
+                .build();
+    }
+}
@@ -0,0 +1,253 @@
+package widget.autofittextview;
+
+import android.graphics.Rect;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+
+/**
+ * Spreads the fits of many views over frames. Once enabled, every {@link AutofitDirectionHelper}
+ * hands its fits here. Fits of visible views run right away while the current frame's budget
+ * lasts, so a newly shown view never draws at its unfitted size. The others are queued. The
+ * queue runs before the next traversal, visible views first, and stops when the frame budget is
+ * spent. What's left runs in the following frames.
+ *
+ * <p>Only fits requested on the main thread are queued, and the scheduler itself must only be
+ * used from the main thread.
+ */
+public final class AutofitScheduler {
+    // Time the queued fits may take per frame, a quarter of a 60Hz frame
+    private static final long DEFAULT_FRAME_BUDGET_NANOS = 4000000L;
+
+    private static AutofitScheduler sInstance;
+
+    private final ArrayList<AutofitDirectionHelper> mQueue = new ArrayList<>();
+    // Reused while running a frame, visible helpers first
+    private final ArrayList<AutofitDirectionHelper> mRunning = new ArrayList<>();
+    private final ArrayList<AutofitDirectionHelper> mHidden = new ArrayList<>();
+    private final Rect mTempRect = new Rect();
+
+    private boolean mEnabled;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+    private boolean mFramePosted;
+    // Time the fits of the current frame took so far, reset by the next frame callback
+    private long mFrameSpentNanos;
+
+    private long mImmediateFitCount;
+    private long mScheduledFitCount;
+    private long mDeferredFitCount;
+    private int mMaxQueueDepth;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFramePosted = false;
+            mFrameSpentNanos = 0;
+            runFits();
+        }
+    };
+
+    private AutofitScheduler() {
+    }
+
+    /**
+     * Returns the scheduler shared by every helper of the process.
+     */
+    public static AutofitScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new AutofitScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns whether helpers queue their fits here.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Set whether helpers queue their fits here. Disabled by default, fits then run synchronously
+     * where they are requested. Disabling runs every queued fit right away.
+     */
+    public AutofitScheduler setEnabled(boolean enabled) {
+        if (mEnabled != enabled) {
+            mEnabled = enabled;
+
+            if (!enabled) {
+                if (mFramePosted) {
+                    Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+                    mFramePosted = false;
+                }
+                mFrameSpentNanos = 0;
+                while (!mQueue.isEmpty()) {
+                    AutofitDirectionHelper helper = mQueue.remove(0);
+                    helper.runScheduledFit();
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the time queued fits may take per frame, in nanoseconds.
+     */
+    public long getFrameBudget() {
+        return mFrameBudgetNanos;
+    }
+
+    /**
+     * Set the time fits may take per frame, in nanoseconds, counting both the fits run right
+     * away and the queued ones. At least one queued fit runs per frame, so the queue always makes
+     * progress.
+     */
+    public AutofitScheduler setFrameBudget(long budgetNanos) {
+        mFrameBudgetNanos = budgetNanos;
+        return this;
+    }
+
+    /**
+     * Returns the number of fits waiting for a frame.
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * Returns the deepest the queue has been.
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    /**
+     * Returns the number of fits of visible views run right away, within the frame budget.
+     */
+    public long getImmediateFitCount() {
+        return mImmediateFitCount;
+    }
+
+    /**
+     * Returns the number of fits queued so far. Requests for a helper that is already queued
+     * are merged and counted once.
+     */
+    public long getScheduledFitCount() {
+        return mScheduledFitCount;
+    }
+
+    /**
+     * Returns how many times a queued fit was pushed to a later frame because the budget was
+     * spent.
+     */
+    public long getDeferredFitCount() {
+        return mDeferredFitCount;
+    }
+
+    public void resetStats() {
+        mImmediateFitCount = 0;
+        mScheduledFitCount = 0;
+        mDeferredFitCount = 0;
+        mMaxQueueDepth = mQueue.size();
+    }
+
+    /**
+     * 可见的视图在本帧预算内立即适配，其余的加入队列，在下一帧执行
+     *
+     * @return false if the fit has to run right away, because the scheduler is disabled or the
+     * request doesn't come from the main thread.
+     */
+    boolean schedule(AutofitDirectionHelper helper) {
+        if (!mEnabled || Looper.myLooper() != Looper.getMainLooper()) {
+            return false;
+        }
+        if (mFrameSpentNanos < mFrameBudgetNanos && isVisible(helper.getTextView())) {
+            // Replaces a fit queued while it was hidden or the budget was spent
+            cancel(helper);
+            long start = System.nanoTime();
+            helper.fitNow();
+            spend(System.nanoTime() - start);
+            mImmediateFitCount++;
+            return true;
+        }
+        if (!helper.isScheduled()) {
+            helper.setScheduled(true);
+            mQueue.add(helper);
+            mScheduledFitCount++;
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+        }
+        postFrame();
+        return true;
+    }
+
+    /**
+     * Drops the queued fit of {@code helper}, if any.
+     */
+    void cancel(AutofitDirectionHelper helper) {
+        if (helper.isScheduled()) {
+            helper.setScheduled(false);
+            mQueue.remove(helper);
+        }
+    }
+
+    /**
+     * 可见的视图优先，超出本帧预算的适配推迟到下一帧
+     */
+    private void runFits() {
+        if (mQueue.isEmpty()) {
+            // Posted only to start the budget of this frame over
+            return;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < mQueue.size(); i++) {
+            AutofitDirectionHelper helper = mQueue.get(i);
+            if (isVisible(helper.getTextView())) {
+                mRunning.add(helper);
+            } else {
+                mHidden.add(helper);
+            }
+        }
+        mRunning.addAll(mHidden);
+        mHidden.clear();
+        mQueue.clear();
+
+        for (int i = 0; i < mRunning.size(); i++) {
+            long spent = System.nanoTime() - start;
+            if (i > 0 && spent > mFrameBudgetNanos) {
+                // Ahead of whatever the fits of this frame queued
+                int remaining = mRunning.size() - i;
+                mQueue.addAll(0, mRunning.subList(i, mRunning.size()));
+                mDeferredFitCount += remaining;
+                break;
+            }
+            // Fits requested by this one see what's left of the budget
+            mFrameSpentNanos = spent;
+            // Skipped if one of the fits before it cancelled it
+            mRunning.get(i).runScheduledFit();
+        }
+        mRunning.clear();
+
+        mFrameSpentNanos = System.nanoTime() - start;
+        postFrame();
+    }
+
+    private void spend(long nanos) {
+        mFrameSpentNanos += nanos;
+        // The next frame starts with a new budget
+        postFrame();
+    }
+
+    // The frame callback starts the budget over and runs what's left in the queue
+    private void postFrame() {
+        if (!mFramePosted) {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            mFramePosted = true;
+        }
+    }
+
+    private boolean isVisible(TextView view) {
+        return view.isShown() && view.getGlobalVisibleRect(mTempRect);
+    }
+}
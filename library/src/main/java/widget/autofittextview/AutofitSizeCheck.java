@@ -0,0 +1,22 @@
+package widget.autofittextview;
+
+/**
+ * Verifies a size that was found without a search, such as a cached or predicted one, against
+ * what the search would have found. Every shortcut goes through {@link #isLargestFit} so they
+ * all accept exactly the same sizes.
+ */
+abstract class AutofitSizeCheck {
+
+    /**
+     * Returns whether the text fits its bounds at {@code size}.
+     */
+    abstract boolean fits(float size);
+
+    /**
+     * Returns whether {@code size} is the largest size that fits, to within {@code precision}.
+     */
+    final boolean isLargestFit(float size, float maxTextSize, float precision) {
+        // Must fit, and one more step of precision must not, unless we're at the max size
+        return fits(size) && (size >= maxTextSize || !fits(size + precision));
+    }
+}
@@ -0,0 +1,145 @@
+package widget.autofittextview;
+
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * Caches the fitted size of single-line text per pixel of available width. The width of a single
+ * line grows linearly with the text size, so a factor found once for a (text, typeface) pair
+ * serves every other width with one multiplication, verified with at most two
+ * {@code measureText}.
+ */
+final class AutofitWidthCache {
+    private static final int MAX_ENTRIES = 256;
+
+    private static final LruCache<Key, Factor> sFactors = new LruCache<Key, Factor>(MAX_ENTRIES);
+
+    private AutofitWidthCache() {
+    }
+
+    /**
+     * Returns the cached size at which {@code text} fills {@code targetWidth}, or -1 if there is
+     * no entry or the cached size fails verification.
+     *
+     * @param lookup reused across calls by the same caller, so that hits don't allocate.
+     */
+    static float get(Lookup lookup, String text, TextPaint paint, float targetWidth,
+            float maxTextSize, float precision) {
+        lookup.set(text, paint, targetWidth);
+        float factor;
+        synchronized (sFactors) {
+            Factor entry = sFactors.get(lookup.mKey);
+            if (entry == null) {
+                return -1;
+            }
+            factor = entry.mValue;
+        }
+
+        float size = Math.min(maxTextSize, factor * targetWidth);
+        if (size <= 0) {
+            return -1;
+        }
+        return lookup.isLargestFit(size, maxTextSize, precision) ? size : -1;
+    }
+
+    /**
+     * Remembers that {@code text} fits {@code targetWidth} at {@code size}.
+     */
+    static void put(Lookup lookup, String text, TextPaint paint, float targetWidth, float size) {
+        if (targetWidth <= 0 || size <= 0) {
+            return;
+        }
+        lookup.set(text, paint, targetWidth);
+        synchronized (sFactors) {
+            Factor entry = sFactors.get(lookup.mKey);
+            if (entry != null) {
+                entry.mValue = size / targetWidth;
+            } else {
+                sFactors.put(new Key(lookup.mKey), new Factor(size / targetWidth));
+            }
+        }
+    }
+
+    /**
+     * The key and verification state of a lookup, owned by one caller and reused.
+     */
+    static final class Lookup extends AutofitSizeCheck {
+        private final Key mKey = new Key();
+        private TextPaint mPaint;
+        private float mTargetWidth;
+
+        private void set(String text, TextPaint paint, float targetWidth) {
+            mKey.set(text, paint);
+            mPaint = paint;
+            mTargetWidth = targetWidth;
+        }
+
+        @Override
+        boolean fits(float size) {
+            mPaint.setTextSize(size);
+            return mPaint.measureText(mKey.mText) <= mTargetWidth;
+        }
+    }
+
+    private static final class Factor {
+        float mValue;
+
+        Factor(float value) {
+            mValue = value;
+        }
+    }
+
+    private static final class Key {
+        private String mText;
+        private Typeface mTypeface;
+        private float mTextScaleX;
+        private float mLetterSpacing;
+        private int mFlags;
+
+        Key() {
+        }
+
+        Key(Key key) {
+            mText = key.mText;
+            mTypeface = key.mTypeface;
+            mTextScaleX = key.mTextScaleX;
+            mLetterSpacing = key.mLetterSpacing;
+            mFlags = key.mFlags;
+        }
+
+        void set(String text, TextPaint paint) {
+            mText = text;
+            mTypeface = paint.getTypeface();
+            mTextScaleX = paint.getTextScaleX();
+            mLetterSpacing = paint.getLetterSpacing();
+            mFlags = paint.getFlags();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mTypeface == key.mTypeface
+                    && mTextScaleX == key.mTextScaleX
+                    && mLetterSpacing == key.mLetterSpacing
+                    && mFlags == key.mFlags
+                    && mText.equals(key.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mText.hashCode();
+            result = 31 * result + (mTypeface != null ? mTypeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(mTextScaleX);
+            result = 31 * result + Float.floatToIntBits(mLetterSpacing);
+            result = 31 * result + mFlags;
+            return result;
+        }
+    }
+}
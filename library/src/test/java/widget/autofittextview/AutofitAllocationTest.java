@@ -0,0 +1,108 @@
+package widget.autofittextview;
+
+import android.text.TextPaint;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails when a fit of {@link AutofitDirectionTextView} starts allocating again. Every keystroke
+ * goes from {@code onTextChanged} through the helper's watcher to a full fit of a view with real
+ * bounds. The only allocations a fit is allowed are the StaticLayouts its search builds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitAllocationTest {
+    private static final String TEXT = "Typing into a view that fits its text";
+    private static final int WARM_UP_KEYSTROKES = 200;
+    private static final int KEYSTROKES = 1000;
+    // Room for the bookkeeping of the measurement itself, far below one object per keystroke
+    private static final long ALLOCATION_BUDGET_BYTES = 1024;
+
+    @Test
+    public void cachedFitDoesNotAllocate() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 2);
+        // Not setSingleLine(), whose transformation copies the text on every change
+        view.setMaxLines(1);
+        view.setText(TEXT);
+        AutofitTestViews.attach(root, view, 200, 120);
+        AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+
+        for (int i = 0; i < WARM_UP_KEYSTROKES; i++) {
+            view.onTextChanged(TEXT, 0, 0, 1);
+        }
+        int fits = stats.getFitCount();
+        long before = allocatedBytes();
+        for (int i = 0; i < KEYSTROKES; i++) {
+            view.onTextChanged(TEXT, 0, 0, 1);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(KEYSTROKES, stats.getFitCount() - fits);
+        assertTrue(stats.isCacheHit());
+        assertTrue("allocated " + allocated + " bytes in " + KEYSTROKES + " fits",
+                allocated <= ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void searchedFitAllocatesOnlyLayouts() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 2);
+        view.setText(TEXT);
+        AutofitTestViews.attach(root, view, 200, 120);
+        AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+
+        for (int i = 0; i < WARM_UP_KEYSTROKES; i++) {
+            view.onTextChanged(TEXT, 0, 0, 1);
+        }
+        int layouts = 0;
+        long before = allocatedBytes();
+        for (int i = 0; i < KEYSTROKES; i++) {
+            view.onTextChanged(TEXT, 0, 0, 1);
+            layouts += stats.getLayoutCount();
+        }
+        long allocated = allocatedBytes() - before;
+
+        // The same number of layouts at the max size, which has the most lines and so costs the
+        // most per layout
+        AutofitProbe probe = newProbe(view, 2);
+        before = allocatedBytes();
+        for (int i = 0; i < layouts; i++) {
+            probe.getLineCount(AutofitTestViews.MAX_TEXT_SIZE);
+        }
+        long layoutAllocated = allocatedBytes() - before;
+
+        assertTrue(stats.getProbeCount() > 0);
+        assertTrue("allocated " + allocated + " bytes in " + KEYSTROKES + " fits, "
+                        + layoutAllocated + " of them for " + layouts + " layouts",
+                allocated - layoutAllocated <= ALLOCATION_BUDGET_BYTES);
+    }
+
+    private static AutofitProbe newProbe(AutofitDirectionTextView view, int maxLines) {
+        AutofitMeasuredText measuredText = new AutofitMeasuredText();
+        measuredText.set(view.getText(), view.getTransformationMethod(), view);
+        AutofitProbe probe = new AutofitProbe();
+        probe.set(measuredText, new TextPaint(view.getPaint()), view.getWidth(),
+                view.getHeight(), maxLines);
+        return probe;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,85 @@
+package widget.autofittextview;
+
+import android.text.TextPaint;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Without a maxLines limit, autoMaxLines fits the largest size whose laid out lines fit the
+ * height, whatever line count that takes, as found by scanning every size.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitAutoLinesTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 160;
+    private static final String[] TEXTS = {
+            "Fit",
+            "The quick brown fox jumps over the lazy dog",
+            "A longer text that has to wrap onto several lines before it fits, and then some more",
+            "Two\nparagraphs of quite different lengths, the second one much longer than the first",
+            "Supercalifragilisticexpialidocious words",
+    };
+
+    @Test
+    public void heightFitsLargestSize() {
+        assertLargestFit(AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT);
+    }
+
+    @Test
+    public void bothFitsLargestSize() {
+        assertLargestFit(AutofitDirectionHelper.ADAPT_DIRECTION_BOTH);
+    }
+
+    private static void assertLargestFit(int adaptDirection) {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                adaptDirection, Integer.MAX_VALUE);
+        view.getAutofitHelper().setAutoMaxLines(true);
+        AutofitTestViews.attach(root, view, WIDTH, HEIGHT);
+        float precision = view.getAutofitHelper().getPrecision();
+
+        for (String text : TEXTS) {
+            view.setText(text);
+            AutofitTestViews.layout(view, WIDTH, HEIGHT);
+            float size = view.getTextSize();
+
+            AutofitProbe probe = newProbe(view);
+            float largest = AutofitTestViews.MIN_TEXT_SIZE;
+            for (float s = AutofitTestViews.MAX_TEXT_SIZE; s > AutofitTestViews.MIN_TEXT_SIZE;
+                    s -= precision / 2) {
+                if (fits(probe, adaptDirection, s)) {
+                    largest = s;
+                    break;
+                }
+            }
+            assertTrue(text + ": " + size + " doesn't fit", size <= AutofitTestViews.MIN_TEXT_SIZE
+                    || fits(probe, adaptDirection, size));
+            assertTrue(text + ": " + size + " is below " + largest, size >= largest - precision);
+        }
+    }
+
+    private static AutofitProbe newProbe(AutofitDirectionTextView view) {
+        AutofitMeasuredText measuredText = new AutofitMeasuredText();
+        measuredText.set(view.getText(), view.getTransformationMethod(), view);
+        AutofitProbe probe = new AutofitProbe();
+        probe.set(measuredText, new TextPaint(view.getPaint()), WIDTH, HEIGHT, Integer.MAX_VALUE);
+        return probe;
+    }
+
+    // Real layouts at whatever line count the size takes
+    private static boolean fits(AutofitProbe probe, int adaptDirection, float size) {
+        int lines = probe.getLineCount(size);
+        return probe.getHeight(size, lines) <= HEIGHT
+                && (adaptDirection == AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT
+                || probe.getMaxLineWidth() <= WIDTH);
+    }
+}
@@ -0,0 +1,110 @@
+package widget.autofittextview;
+
+import android.graphics.Paint;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sizes answered from the breakpoint index fit the bounds, and one precision step more doesn't.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitBreakpointIndexTest {
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog. "
+            + "Pack my box with five dozen liquor jugs. How vexingly quick daft zebras jump!";
+    private static final int WIDTH = 300;
+
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = AutofitTestViews.newRoot();
+    }
+
+    @Test
+    public void offByDefault() {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, 3);
+        assertFalse(view.getAutofitHelper().isBreakpointIndexing());
+    }
+
+    @Test
+    public void fitsForEveryMaxLinesAndHeight() {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, 2);
+        view.getAutofitHelper().setBreakpointIndexing(true);
+        view.setText(TEXT);
+        AutofitTestViews.attach(mRoot, view, WIDTH, 400);
+
+        int[] heights = {40, 120, 250, 400, 1000};
+        for (int maxLines = 2; maxLines <= 8; maxLines++) {
+            view.setMaxLines(maxLines);
+            for (int height : heights) {
+                AutofitTestViews.layout(view, WIDTH, height);
+                assertFitsExactly(view, maxLines, height);
+            }
+        }
+    }
+
+    @Test
+    public void indexedHeightsNeedNoLayouts() {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, 4);
+        view.getAutofitHelper().setBreakpointIndexing(true);
+        view.setText(TEXT);
+        AutofitTestViews.attach(mRoot, view, WIDTH, 400);
+        // Finds the sizes at which the line count changes over the whole range
+        for (int height = 390; height >= 100; height -= 10) {
+            AutofitTestViews.layout(view, WIDTH, height);
+        }
+
+        for (int height = 110; height <= 400; height += 10) {
+            AutofitTestViews.layout(view, WIDTH, height);
+
+            AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+            assertEquals("layouts at height " + height, 0, stats.getLayoutCount());
+        }
+    }
+
+    private static void assertFitsExactly(AutofitDirectionTextView view, int maxLines,
+            int height) {
+        float size = view.getTextSize();
+        float precision = view.getAutofitHelper().getPrecision();
+        String where = "maxLines=" + maxLines + " height=" + height + " size=" + size;
+        if (size > AutofitTestViews.MIN_TEXT_SIZE) {
+            assertTrue(where, fits(view, size, maxLines, height));
+        }
+        if (size < AutofitTestViews.MAX_TEXT_SIZE) {
+            assertFalse(where, fits(view, size + precision, maxLines, height));
+        }
+    }
+
+    // The height model the search uses, see AutofitProbe#getHeight
+    private static boolean fits(AutofitDirectionTextView view, float size, int maxLines,
+            int height) {
+        TextPaint paint = new TextPaint(view.getPaint());
+        paint.setTextSize(size);
+        CharSequence text = view.getText();
+        StaticLayout layout = StaticLayout.Builder.obtain(text, 0, text.length(), paint, WIDTH)
+                .setLineSpacing(0.0f, 1.0f)
+                .setIncludePad(true)
+                .build();
+        int lines = layout.getLineCount();
+        Paint.FontMetrics fm = paint.getFontMetrics();
+        float textHeight = fm.bottom - fm.ascent + (fm.leading + fm.bottom - fm.top) * (lines - 1);
+        return lines <= maxLines && textHeight <= height;
+    }
+}
@@ -0,0 +1,152 @@
+package widget.autofittextview;
+
+import android.util.TypedValue;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static widget.autofittextview.AutofitDirectionHelper.ADAPT_DIRECTION_BOTH;
+import static widget.autofittextview.AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT;
+import static widget.autofittextview.AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH;
+
+/**
+ * Holds the cost of a fit to a budget, so a change that doubles the layouts built per fit fails
+ * the build instead of shipping. Text is measured with the native graphics, like on a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitBudgetTest {
+    // A bisection between the min and max size at the default precision takes 8 probes, plus the
+    // check at the max size and the verification of a predicted size
+    private static final int PROBE_BUDGET = 12;
+
+    private static final String SHORT_TEXT = "The quick brown fox jumps over the lazy dog";
+    private static final String LONG_TEXT = "The quick brown fox jumps over the lazy dog. "
+            + "Pack my box with five dozen liquor jugs.\nHow vexingly quick daft zebras jump!";
+
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = AutofitTestViews.newRoot();
+    }
+
+    @Test
+    public void singleLineWidthFit() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_WIDTH, 1, SHORT_TEXT, 300, 120);
+
+        assertFitted(view);
+        assertBudget(view, 1, PROBE_BUDGET);
+    }
+
+    @Test
+    public void multiLineWidthFit() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_WIDTH, 4, LONG_TEXT, 300, 600);
+
+        assertFitted(view);
+        assertBudget(view, 2, PROBE_BUDGET);
+    }
+
+    @Test
+    public void heightFit() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_HEIGHT, 2, SHORT_TEXT, 300, 80);
+
+        assertFitted(view);
+        assertBudget(view, 1, PROBE_BUDGET);
+    }
+
+    @Test
+    public void bothDirectionFit() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_BOTH, 3, LONG_TEXT, 300, 150);
+
+        assertFitted(view);
+        assertBudget(view, 2, 2 * PROBE_BUDGET);
+    }
+
+    @Test
+    public void typingRelayoutsAtMostOncePerKeystroke() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_WIDTH, 1, "", 300, 120);
+        AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+
+        for (int i = 1; i <= SHORT_TEXT.length(); i++) {
+            int fits = stats.getFitCount();
+            int changes = stats.getTextSizeChangeCount();
+            view.setText(SHORT_TEXT.substring(0, i));
+
+            assertTrue("fits per keystroke", stats.getFitCount() - fits <= 1);
+            assertTrue("relayouts per keystroke", stats.getTextSizeChangeCount() - changes <= 1);
+            assertBudget(view, 1, PROBE_BUDGET);
+        }
+        assertFitted(view);
+    }
+
+    @Test
+    public void resizeStaysWithinBudget() {
+        AutofitDirectionTextView view = fit(ADAPT_DIRECTION_BOTH, 3, LONG_TEXT, 400, 300);
+
+        for (int width = 390; width >= 200; width -= 10) {
+            AutofitTestViews.layout(view, width, 300 * width / 400);
+
+            assertFitted(view);
+            assertBudget(view, 2, 2 * PROBE_BUDGET);
+        }
+    }
+
+    @Test
+    public void layoutChildrenStayWithinBudget() {
+        AutofitDirectionLayout layout = new AutofitDirectionLayout(mRoot.getContext());
+        String[] texts = {SHORT_TEXT, LONG_TEXT, "Autofit"};
+        for (String text : texts) {
+            TextView child = new TextView(mRoot.getContext());
+            child.setSingleLine();
+            child.setTextSize(TypedValue.COMPLEX_UNIT_PX, 60);
+            child.setText(text);
+            layout.addView(child, new FrameLayout.LayoutParams(250, 100));
+        }
+        AutofitTestViews.attach(mRoot, layout, 250, 100);
+
+        for (int i = 0; i < layout.getChildCount(); i++) {
+            AutofitDirectionHelper helper = layout.getAutofitHelper(i);
+            AutofitDirectionHelper.FitStats stats = helper.getFitStats();
+            assertTrue("fits", stats.getFitCount() >= 1);
+            assertTrue("probes " + stats.getProbeCount(), stats.getProbeCount() <= PROBE_BUDGET);
+        }
+    }
+
+    private AutofitDirectionTextView fit(int adaptDirection, int maxLines, String text,
+            int width, int height) {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                adaptDirection, maxLines);
+        view.setText(text);
+        AutofitTestViews.attach(mRoot, view, width, height);
+        return view;
+    }
+
+    private static void assertFitted(AutofitDirectionTextView view) {
+        AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+        assertTrue("no fit ran", stats.getFitCount() > 0);
+        assertEquals(view.getAutofitHelper().getAdaptDirection(), stats.getAdaptDirection());
+        float size = view.getTextSize();
+        assertTrue("size " + size, size >= AutofitTestViews.MIN_TEXT_SIZE
+                && size <= AutofitTestViews.MAX_TEXT_SIZE);
+    }
+
+    private static void assertBudget(AutofitDirectionTextView view, int paragraphs,
+            int probeBudget) {
+        AutofitDirectionHelper.FitStats stats = view.getAutofitHelper().getFitStats();
+        int probes = stats.getProbeCount();
+        assertTrue("probes " + probes + " > " + probeBudget, probes <= probeBudget);
+        // One layout per paragraph and probe, plus the one the ellipsize fallback may build
+        int layouts = stats.getLayoutCount();
+        assertTrue("layouts " + layouts, layouts <= probes * paragraphs + 1);
+    }
+}
@@ -0,0 +1,81 @@
+package widget.autofittextview;
+
+import android.content.Context;
+import android.util.TypedValue;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The labels {@link AutofitDirectionLayout} draws over its children are redrawn after every
+ * fit of a child, and fits cost nothing extra while the overlay is off.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitDebugOverlayTest {
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = AutofitTestViews.newRoot();
+    }
+
+    @Test
+    public void childFitInvalidatesLayoutWithOverlay() {
+        CountingLayout layout = newLayout();
+        layout.setDebugOverlay(true);
+        TextView child = (TextView) layout.getChildAt(0);
+
+        layout.mInvalidateCount = 0;
+        child.setText("A different text that needs another fit");
+
+        assertTrue(layout.getAutofitHelper(child).getFitStats().getFitCount() > 1);
+        assertTrue(layout.mInvalidateCount > 0);
+    }
+
+    @Test
+    public void childFitLeavesLayoutAloneWithoutOverlay() {
+        CountingLayout layout = newLayout();
+        TextView child = (TextView) layout.getChildAt(0);
+
+        layout.mInvalidateCount = 0;
+        child.setText("A different text that needs another fit");
+
+        assertEquals(0, layout.mInvalidateCount);
+    }
+
+    private CountingLayout newLayout() {
+        CountingLayout layout = new CountingLayout(mRoot.getContext());
+        TextView child = new TextView(mRoot.getContext());
+        child.setSingleLine();
+        child.setTextSize(TypedValue.COMPLEX_UNIT_PX, 60);
+        child.setText("The quick brown fox jumps over the lazy dog");
+        layout.addView(child, new FrameLayout.LayoutParams(250, 100));
+        AutofitTestViews.attach(mRoot, layout, 250, 100);
+        return layout;
+    }
+
+    private static class CountingLayout extends AutofitDirectionLayout {
+        int mInvalidateCount;
+
+        CountingLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void invalidate() {
+            super.invalidate();
+            mInvalidateCount++;
+        }
+    }
+}
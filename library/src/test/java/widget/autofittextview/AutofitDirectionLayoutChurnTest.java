@@ -0,0 +1,92 @@
+package widget.autofittextview;
+
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import me.grantland.widget.R;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Adds and removes children of an {@link AutofitDirectionLayout} over and over, and checks that
+ * nothing keeps the removed children or their helpers alive.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AutofitDirectionLayoutChurnTest {
+    private static final int ROUNDS = 200;
+    private static final int CHILDREN_PER_ROUND = 5;
+    private static final int MAX_GC_ATTEMPTS = 20;
+
+    @Test
+    public void removedChildrenAreCollected() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionLayout layout = new AutofitDirectionLayout(root.getContext());
+        AutofitTestViews.attach(root, layout, 300, 300);
+
+        ArrayList<WeakReference<Object>> removed = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CHILDREN_PER_ROUND; i++) {
+                TextView child = new TextView(root.getContext());
+                child.setText("Churn " + round + " " + i);
+                layout.addView(child, new FrameLayout.LayoutParams(300, 60));
+                removed.add(new WeakReference<Object>(child));
+                removed.add(new WeakReference<Object>(layout.getAutofitHelper(child)));
+            }
+            AutofitTestViews.layout(layout, 300, 300);
+            if (round % 2 == 0) {
+                layout.removeAllViews();
+            } else {
+                while (layout.getChildCount() > 0) {
+                    layout.removeViewAt(0);
+                }
+            }
+        }
+        assertEquals(0, layout.getChildCount());
+        ShadowLooper.idleMainLooper();
+
+        int alive = countAlive(removed);
+        for (int i = 0; i < MAX_GC_ATTEMPTS && alive > 0; i++) {
+            System.gc();
+            System.runFinalization();
+            alive = countAlive(removed);
+        }
+        assertEquals("removed children or helpers still reachable", 0, alive);
+    }
+
+    @Test
+    public void removedChildDropsItsHelper() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionLayout layout = new AutofitDirectionLayout(root.getContext());
+        AutofitTestViews.attach(root, layout, 300, 300);
+        TextView child = new TextView(root.getContext());
+        layout.addView(child, new FrameLayout.LayoutParams(300, 60));
+
+        AutofitDirectionHelper helper = layout.getAutofitHelper(child);
+        layout.removeView(child);
+
+        assertNull(child.getTag(R.id.autofit_helper));
+        assertFalse(helper.isEnabled());
+    }
+
+    private static int countAlive(ArrayList<WeakReference<Object>> references) {
+        int alive = 0;
+        for (WeakReference<Object> reference : references) {
+            if (reference.get() != null) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+}
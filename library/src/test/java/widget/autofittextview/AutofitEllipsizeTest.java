@@ -0,0 +1,66 @@
+package widget.autofittextview;
+
+import android.util.TypedValue;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The ellipsize fallback truncates the text set on the TextView, not the transformed text it
+ * measures, and leaves an EditText alone.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitEllipsizeTest {
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog and keeps on "
+            + "running far beyond the end of this very narrow view";
+    private static final String ELLIPSIS = "…";
+
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = AutofitTestViews.newRoot();
+    }
+
+    @Test
+    public void truncatesSourceTextOfAllCapsView() {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 1);
+        view.setAllCaps(true);
+        view.setEllipsizeFallback(true);
+        view.setText(TEXT);
+        AutofitTestViews.attach(mRoot, view, 200, 60);
+
+        String shown = view.getText().toString();
+        assertTrue(shown, shown.endsWith(ELLIPSIS));
+        String kept = shown.substring(0, shown.length() - ELLIPSIS.length());
+        // The original case, the transformation still upper-cases it when drawing
+        assertTrue(shown, TEXT.startsWith(kept));
+        assertEquals(TEXT, view.getAutofitHelper().getFullText().toString());
+    }
+
+    @Test
+    public void neverTruncatesEditText() {
+        EditText view = new EditText(mRoot.getContext());
+        view.setSingleLine();
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, AutofitTestViews.MAX_TEXT_SIZE);
+        view.setText(TEXT);
+        AutofitDirectionHelper helper = AutofitDirectionHelper.create(view)
+                .setEllipsizeFallback(true);
+        AutofitTestViews.attach(mRoot, view, 200, 60);
+
+        assertTrue(helper.getFitStats().getFitCount() > 0);
+        assertEquals(TEXT, view.getText().toString());
+    }
+}
@@ -0,0 +1,77 @@
+package widget.autofittextview;
+
+import android.text.SpanWatcher;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The analysis of a Spannable source is dropped when a span that affects measuring is added to,
+ * removed from or moved on it, since the source keeps its identity and length.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AutofitMeasuredTextTest {
+    private static final String TEXT = "Some text to style";
+
+    @Test
+    public void metricAffectingSpanInvalidates() {
+        SpannableString source = new SpannableString(TEXT);
+        AutofitMeasuredText measuredText = new AutofitMeasuredText(true);
+        measuredText.set(source, null, null);
+        assertFalse(measuredText.hasMetricAffectingSpans());
+
+        RelativeSizeSpan span = new RelativeSizeSpan(2f);
+        source.setSpan(span, 0, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertFalse(measuredText.isFor(source, null));
+        measuredText.set(source, null, null);
+        assertTrue(measuredText.hasMetricAffectingSpans());
+
+        source.setSpan(span, 5, 9, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertFalse(measuredText.isFor(source, null));
+        measuredText.set(source, null, null);
+
+        source.removeSpan(span);
+        assertFalse(measuredText.isFor(source, null));
+        measuredText.set(source, null, null);
+        assertFalse(measuredText.hasMetricAffectingSpans());
+    }
+
+    @Test
+    public void drawingSpanKeepsAnalysis() {
+        SpannableString source = new SpannableString(TEXT);
+        AutofitMeasuredText measuredText = new AutofitMeasuredText(true);
+        measuredText.set(source, null, null);
+        int generation = measuredText.getGeneration();
+
+        source.setSpan(new ForegroundColorSpan(0xffff0000), 0, 4,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertTrue(measuredText.isFor(source, null));
+        assertEquals(generation, measuredText.getGeneration());
+    }
+
+    @Test
+    public void releaseStopsWatching() {
+        SpannableString source = new SpannableString(TEXT);
+        AutofitMeasuredText measuredText = new AutofitMeasuredText(true);
+        measuredText.set(source, null, null);
+        assertEquals(1, source.getSpans(0, source.length(), SpanWatcher.class).length);
+
+        SpannableString other = new SpannableString(TEXT);
+        measuredText.set(other, null, null);
+        assertEquals(0, source.getSpans(0, source.length(), SpanWatcher.class).length);
+
+        measuredText.release();
+        assertEquals(0, other.getSpans(0, other.length(), SpanWatcher.class).length);
+    }
+}
@@ -0,0 +1,76 @@
+package widget.autofittextview;
+
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The k-ary search, which lays out several sizes at once on worker threads, finds the same size
+ * as the plain bisection to within the precision, in every direction.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitParallelSearchTest {
+    private static final int PARALLELISM = 4;
+    private static final int MAX_LINES = 3;
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 120;
+    private static final String[] TEXTS = {
+            "Fit",
+            "The quick brown fox jumps over the lazy dog",
+            "A longer text that has to wrap onto several lines before it fits, and then some more",
+            "Two\nparagraphs of quite different lengths",
+    };
+
+    @Test
+    public void widthMatchesBisection() {
+        assertMatchesBisection(AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH);
+    }
+
+    @Test
+    public void heightMatchesBisection() {
+        assertMatchesBisection(AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT);
+    }
+
+    @Test
+    public void bothMatchesBisection() {
+        assertMatchesBisection(AutofitDirectionHelper.ADAPT_DIRECTION_BOTH);
+    }
+
+    private static void assertMatchesBisection(int adaptDirection) {
+        assumeTrue("needs more than one processor to probe in parallel",
+                Runtime.getRuntime().availableProcessors() > 1);
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView serial = newView(root, adaptDirection, 1);
+        AutofitDirectionTextView parallel = newView(root, adaptDirection, PARALLELISM);
+        assertTrue(parallel.getAutofitHelper().getSearchParallelism() > 1);
+        float precision = serial.getAutofitHelper().getPrecision();
+
+        for (String text : TEXTS) {
+            serial.setText(text);
+            parallel.setText(text);
+            AutofitTestViews.layout(serial, WIDTH, HEIGHT);
+            AutofitTestViews.layout(parallel, WIDTH, HEIGHT);
+
+            assertEquals(text, serial.getTextSize(), parallel.getTextSize(), precision);
+        }
+    }
+
+    private static AutofitDirectionTextView newView(FrameLayout root, int adaptDirection,
+            int parallelism) {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                adaptDirection, MAX_LINES);
+        view.getAutofitHelper().setSearchParallelism(parallelism);
+        AutofitTestViews.attach(root, view, WIDTH, HEIGHT);
+        return view;
+    }
+}
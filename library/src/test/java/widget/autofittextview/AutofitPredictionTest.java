@@ -0,0 +1,99 @@
+package widget.autofittextview;
+
+import android.text.TextPaint;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Predicted line breaks follow the line breaker's rules for CJK punctuation, and a predicted
+ * size is only taken when the text fits at it and doesn't one precision step above.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitPredictionTest {
+    private static final String CJK_TEXT = "床前明月光，疑是地上霜。举头望明月，低头思故乡。"
+            + "「春眠不觉晓」，处处闻啼鸟。夜来风雨声，花落知多少。";
+
+    @Test
+    public void punctuationDoesNotStartALine() {
+        TextPaint paint = new TextPaint();
+        AutofitAdvanceTable table = AutofitAdvanceTable.get(paint, new AutofitAdvanceTable.Key());
+        String text = "一二三四。";
+        float size = 20f;
+        // Exactly four characters fit, the full stop would start the second line
+        float width = table.measure(text, 0, 4, size);
+        float[] maxLineWidth = new float[1];
+
+        int lines = table.breakParagraph(text, 0, text.length(), size, width, true,
+                maxLineWidth);
+
+        assertEquals(2, lines);
+        assertTrue(maxLineWidth[0] < width);
+    }
+
+    @Test
+    public void openingBracketDoesNotEndALine() {
+        TextPaint paint = new TextPaint();
+        AutofitAdvanceTable table = AutofitAdvanceTable.get(paint, new AutofitAdvanceTable.Key());
+        String text = "一二三「四」";
+        float size = 20f;
+        float width = table.measure(text, 0, 4, size);
+        float[] maxLineWidth = new float[1];
+
+        int lines = table.breakParagraph(text, 0, text.length(), size, width, true,
+                maxLineWidth);
+
+        assertEquals(2, lines);
+        assertEquals(table.measure(text, 0, 3, size), maxLineWidth[0], 0.01f);
+    }
+
+    @Test
+    public void predictedSizeIsTheLargestThatFits() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        int[] heights = {80, 160, 300};
+        for (int maxLines = 2; maxLines <= 5; maxLines++) {
+            for (int height : heights) {
+                AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                        AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, maxLines);
+                view.setText(CJK_TEXT);
+                AutofitTestViews.attach(root, view, 300, height);
+
+                float size = view.getTextSize();
+                float precision = view.getAutofitHelper().getPrecision();
+                AutofitProbe probe = newProbe(view, maxLines);
+                String where = "maxLines=" + maxLines + " height=" + height + " size=" + size;
+                if (size > AutofitTestViews.MIN_TEXT_SIZE) {
+                    assertTrue(where, fits(probe, size));
+                }
+                if (size < AutofitTestViews.MAX_TEXT_SIZE) {
+                    assertTrue(where, !fits(probe, size + precision));
+                }
+                root.removeView(view);
+            }
+        }
+    }
+
+    private static AutofitProbe newProbe(AutofitDirectionTextView view, int maxLines) {
+        AutofitMeasuredText measuredText = new AutofitMeasuredText();
+        measuredText.set(view.getText(), view.getTransformationMethod(), view);
+        AutofitProbe probe = new AutofitProbe();
+        probe.set(measuredText, new TextPaint(view.getPaint()), view.getWidth(),
+                view.getHeight(), maxLines);
+        return probe;
+    }
+
+    // Real layouts, no prediction
+    private static boolean fits(AutofitProbe probe, float size) {
+        return probe.compare(AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, size) <= 0
+                && probe.compare(AutofitDirectionHelper.ADAPT_DIRECTION_HEIGHT, size) <= 0;
+    }
+}
@@ -0,0 +1,78 @@
+package widget.autofittextview;
+
+import android.text.TextUtils;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Render scaling only applies to horizontally scrolling text without ellipsize, everything else
+ * is fitted by changing the text size.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitRenderScaleTest {
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mRoot = AutofitTestViews.newRoot();
+    }
+
+    @Test
+    public void scalesSingleLineText() {
+        AutofitDirectionTextView view = newView();
+        view.setSingleLine();
+        fit(view);
+
+        assertEquals(AutofitTestViews.MAX_TEXT_SIZE, view.getTextSize(), 0f);
+        assertTrue(view.getAutofitHelper().getRenderScaleFactor() < 1f);
+    }
+
+    @Test
+    public void resizesEllipsizedText() {
+        AutofitDirectionTextView view = newView();
+        view.setSingleLine();
+        view.setEllipsize(TextUtils.TruncateAt.END);
+        fit(view);
+
+        assertResized(view);
+    }
+
+    @Test
+    public void resizesWrappingTextLimitedToOneLine() {
+        AutofitDirectionTextView view = newView();
+        view.setMaxLines(1);
+        fit(view);
+
+        assertResized(view);
+    }
+
+    private AutofitDirectionTextView newView() {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 2);
+        view.setRenderScale(true);
+        view.setText(TEXT);
+        return view;
+    }
+
+    private void fit(AutofitDirectionTextView view) {
+        AutofitTestViews.attach(mRoot, view, 300, 120);
+    }
+
+    private static void assertResized(AutofitDirectionTextView view) {
+        assertEquals(1f, view.getAutofitHelper().getRenderScaleFactor(), 0f);
+        assertTrue(view.getTextSize() < AutofitTestViews.MAX_TEXT_SIZE);
+    }
+}
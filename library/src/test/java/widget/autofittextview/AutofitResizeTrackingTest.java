@@ -0,0 +1,54 @@
+package widget.autofittextview;
+
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fits bracketed from the previous fit while the bounds change reach the same sizes as a full
+ * search, including the max text size.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitResizeTrackingTest {
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    @Test
+    public void growingBoundsReachMaxTextSize() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, 2);
+        view.getAutofitHelper().setResizeTracking(true).setResizeSettleDelay(0);
+        view.setText(TEXT);
+        AutofitTestViews.attach(root, view, 200, 60);
+        assertTrue(view.getTextSize() < AutofitTestViews.MAX_TEXT_SIZE);
+
+        AutofitTestViews.layout(view, 2000, 1000);
+
+        assertEquals(AutofitTestViews.MAX_TEXT_SIZE, view.getTextSize(), 0f);
+    }
+
+    @Test
+    public void growingStepByStepReachesMaxTextSize() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_BOTH, 2);
+        view.getAutofitHelper().setResizeTracking(true).setResizeSettleDelay(0);
+        view.setText(TEXT);
+        AutofitTestViews.attach(root, view, 200, 60);
+
+        for (int width = 250; width <= 2000; width += 50) {
+            AutofitTestViews.layout(view, width, width / 2);
+        }
+
+        assertEquals(AutofitTestViews.MAX_TEXT_SIZE, view.getTextSize(), 0f);
+    }
+}
@@ -0,0 +1,75 @@
+package widget.autofittextview;
+
+import android.graphics.Typeface;
+import android.os.Parcelable;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A fit restored from the instance state is taken by the first fit without a search, and still
+ * applies the ellipsize fallback. It is dropped when the font family changed in between.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitRestoreTest {
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog, again and "
+            + "again, far past the end of this narrow view";
+
+    @Test
+    public void restoredFitIsEllipsized() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView saved = newView(root);
+        AutofitTestViews.attach(root, saved, 150, 40);
+        String ellipsized = saved.getText().toString();
+        Parcelable state = saved.onSaveInstanceState();
+        root.removeView(saved);
+
+        AutofitDirectionTextView restored = newView(root);
+        restored.onRestoreInstanceState(state);
+        AutofitTestViews.attach(root, restored, 150, 40);
+
+        AutofitDirectionHelper.FitStats stats = restored.getAutofitHelper().getFitStats();
+        assertTrue(stats.isCacheHit());
+        assertEquals(0, stats.getProbeCount());
+        assertEquals(ellipsized, restored.getText().toString());
+        assertEquals(TEXT, restored.getAutofitHelper().getFullText().toString());
+    }
+
+    @Test
+    public void otherFontFamilyIsNotRestored() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView saved = newView(root);
+        saved.setTypeface(Typeface.SERIF);
+        AutofitTestViews.attach(root, saved, 150, 40);
+        Parcelable state = saved.onSaveInstanceState();
+        root.removeView(saved);
+
+        // Same style, other family
+        AutofitDirectionTextView restored = newView(root);
+        restored.setTypeface(Typeface.MONOSPACE);
+        restored.onRestoreInstanceState(state);
+        AutofitTestViews.attach(root, restored, 150, 40);
+
+        AutofitDirectionHelper.FitStats stats = restored.getAutofitHelper().getFitStats();
+        assertFalse(stats.isCacheHit());
+        assertTrue(stats.getProbeCount() > 0);
+    }
+
+    private static AutofitDirectionTextView newView(FrameLayout root) {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 2);
+        view.setEllipsizeFallback(true);
+        view.setText(TEXT);
+        return view;
+    }
+}
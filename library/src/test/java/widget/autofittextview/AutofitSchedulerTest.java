@@ -0,0 +1,146 @@
+package widget.autofittextview;
+
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fits of visible views run right away while the frame budget lasts, everything else waits for
+ * a frame with visible views first, and cancelled fits never run.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitSchedulerTest {
+    private static final long FRAME_MILLIS = 16;
+    // Far more than any fit takes, so only an explicitly spent budget defers fits
+    private static final long UNLIMITED_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_FRAMES = 10;
+
+    private AutofitScheduler mScheduler;
+    private long mFrameBudget;
+    private FrameLayout mRoot;
+
+    @Before
+    public void setUp() {
+        mScheduler = AutofitScheduler.getInstance();
+        mFrameBudget = mScheduler.getFrameBudget();
+        mRoot = AutofitTestViews.newRoot();
+        mScheduler.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.setEnabled(false);
+        mScheduler.setFrameBudget(mFrameBudget);
+        mScheduler.resetStats();
+    }
+
+    @Test
+    public void visibleFitRunsRightAway() {
+        mScheduler.setFrameBudget(UNLIMITED_BUDGET_NANOS);
+        AutofitDirectionTextView view = newView("Short");
+        nextFrame();
+        mScheduler.resetStats();
+        int fits = fitCount(view);
+
+        view.setText("A longer text that needs a smaller size");
+
+        assertEquals(fits + 1, fitCount(view));
+        assertEquals(1, mScheduler.getImmediateFitCount());
+        assertEquals(0, mScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void spentBudgetDefersVisibleFits() {
+        mScheduler.setFrameBudget(0);
+        AutofitDirectionTextView view = newView("Short");
+        runQueue();
+        int fits = fitCount(view);
+
+        view.setText("A longer text that needs a smaller size");
+        assertEquals(fits, fitCount(view));
+        assertEquals(1, mScheduler.getQueueDepth());
+
+        nextFrame();
+        assertEquals(fits + 1, fitCount(view));
+    }
+
+    @Test
+    public void visibleFitsRunBeforeHiddenOnes() {
+        mScheduler.setFrameBudget(0);
+        AutofitDirectionTextView hidden = newView("Short");
+        AutofitDirectionTextView visible = newView("Short");
+        runQueue();
+        hidden.setVisibility(View.INVISIBLE);
+        int hiddenFits = fitCount(hidden);
+        int visibleFits = fitCount(visible);
+        mScheduler.resetStats();
+
+        // Queued in the opposite order
+        hidden.setText("A longer text that needs a smaller size");
+        visible.setText("A longer text that needs a smaller size");
+        assertEquals(2, mScheduler.getQueueDepth());
+
+        // A spent budget still runs one fit per frame
+        nextFrame();
+        assertEquals(visibleFits + 1, fitCount(visible));
+        assertEquals(hiddenFits, fitCount(hidden));
+        assertTrue(mScheduler.getDeferredFitCount() >= 1);
+
+        runQueue();
+        assertEquals(hiddenFits + 1, fitCount(hidden));
+    }
+
+    @Test
+    public void cancelledFitNeverRuns() {
+        mScheduler.setFrameBudget(0);
+        AutofitDirectionTextView view = newView("Short");
+        runQueue();
+        int fits = fitCount(view);
+
+        view.setText("A longer text that needs a smaller size");
+        assertEquals(1, mScheduler.getQueueDepth());
+        view.getAutofitHelper().setEnabled(false);
+        assertEquals(0, mScheduler.getQueueDepth());
+
+        runQueue();
+        assertEquals(fits, fitCount(view));
+    }
+
+    private AutofitDirectionTextView newView(String text) {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(mRoot.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 1);
+        view.setText(text);
+        AutofitTestViews.attach(mRoot, view, 200, 60);
+        return view;
+    }
+
+    private static int fitCount(AutofitDirectionTextView view) {
+        return view.getAutofitHelper().getFitStats().getFitCount();
+    }
+
+    private void nextFrame() {
+        ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void runQueue() {
+        for (int i = 0; i < MAX_FRAMES && mScheduler.getQueueDepth() > 0; i++) {
+            nextFrame();
+        }
+        assertEquals(0, mScheduler.getQueueDepth());
+    }
+}
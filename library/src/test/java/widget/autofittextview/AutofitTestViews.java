@@ -0,0 +1,69 @@
+package widget.autofittextview;
+
+import android.app.Activity;
+import android.content.Context;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Builds attached, measured views for the tests. Layout passes are run by hand, so every fit
+ * happens at a known point instead of whenever the looper is idled.
+ */
+final class AutofitTestViews {
+    static final float MAX_TEXT_SIZE = 100f;
+    static final float MIN_TEXT_SIZE = 10f;
+
+    private AutofitTestViews() {
+    }
+
+    /**
+     * Returns an empty container attached to the window of a resumed activity.
+     */
+    static FrameLayout newRoot() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        FrameLayout root = new FrameLayout(activity);
+        activity.setContentView(root);
+        ShadowLooper.idleMainLooper();
+        return root;
+    }
+
+    /**
+     * Returns a view fitting between {@link #MIN_TEXT_SIZE} and {@link #MAX_TEXT_SIZE} pixels.
+     */
+    static AutofitDirectionTextView newTextView(Context context, int adaptDirection,
+            int maxLines) {
+        AutofitDirectionTextView view = new AutofitDirectionTextView(context);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, MAX_TEXT_SIZE);
+        view.setMaxTextSize(TypedValue.COMPLEX_UNIT_PX, MAX_TEXT_SIZE);
+        view.setMinTextSize(TypedValue.COMPLEX_UNIT_PX, MIN_TEXT_SIZE);
+        if (maxLines == 1) {
+            view.setSingleLine();
+        } else {
+            view.setMaxLines(maxLines);
+        }
+        view.getAutofitHelper().setAdaptDirection(adaptDirection);
+        return view;
+    }
+
+    /**
+     * Adds {@code view} to {@code root} and lays it out at exactly {@code width} x {@code height}.
+     */
+    static void attach(ViewGroup root, View view, int width, int height) {
+        root.addView(view, new ViewGroup.LayoutParams(width, height));
+        layout(view, width, height);
+    }
+
+    /**
+     * Runs a layout pass of {@code view} at exactly {@code width} x {@code height}.
+     */
+    static void layout(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+}
@@ -0,0 +1,81 @@
+package widget.autofittextview;
+
+import android.text.TextPaint;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A size taken from the width cache for a new width is the size a fresh search finds at that
+ * width, to within the precision.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AutofitWidthCacheTest {
+    // Not used by any other test, the cache is shared by the whole process
+    private static final String TEXT = "Width cache entries scale with the available width";
+    private static final int CACHED_WIDTH = 300;
+    private static final int[] WIDTHS = { 120, 170, 230, 290, 360, 450 };
+    private static final int HEIGHT = 80;
+
+    @Test
+    public void cacheHitMatchesFreshSearch() {
+        FrameLayout root = AutofitTestViews.newRoot();
+        AutofitDirectionTextView first = newView(root, CACHED_WIDTH);
+        assertFalse(first.getAutofitHelper().getFitStats().isCacheHit());
+
+        int hits = 0;
+        for (int width : WIDTHS) {
+            AutofitDirectionTextView view = newView(root, width);
+            // A cached size that fails verification falls back to the search
+            if (view.getAutofitHelper().getFitStats().isCacheHit()) {
+                hits++;
+            }
+            float precision = view.getAutofitHelper().getPrecision();
+            assertEquals("width " + width, search(view, precision), view.getTextSize(),
+                    precision);
+        }
+        assertTrue(hits > 0);
+    }
+
+    private static AutofitDirectionTextView newView(FrameLayout root, int width) {
+        AutofitDirectionTextView view = AutofitTestViews.newTextView(root.getContext(),
+                AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, 1);
+        view.setText(TEXT);
+        AutofitTestViews.attach(root, view, width, HEIGHT);
+        return view;
+    }
+
+    // The bisection of AutofitDirectionHelper, without a cache in front of it
+    private static float search(AutofitDirectionTextView view, float precision) {
+        AutofitMeasuredText measuredText = new AutofitMeasuredText();
+        measuredText.set(TEXT, view.getTransformationMethod(), view);
+        AutofitProbe probe = new AutofitProbe();
+        probe.set(measuredText, new TextPaint(view.getPaint()), view.getWidth(),
+                view.getHeight(), 1);
+
+        float lo = 0;
+        float hi = AutofitTestViews.MAX_TEXT_SIZE;
+        if (probe.compare(AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, hi) <= 0) {
+            return hi;
+        }
+        while (hi - lo >= precision) {
+            float mid = (lo + hi) / 2.0f;
+            if (probe.compare(AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH, mid) > 0) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+        return Math.max(lo, AutofitTestViews.MIN_TEXT_SIZE);
+    }
+}
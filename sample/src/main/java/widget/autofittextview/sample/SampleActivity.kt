@@ -14,6 +14,7 @@ import android.widget.TextView
 class SampleActivity: Activity() {
     private var signButton: Button? = null
     private  var multiButton:Button? = null
+    private var stressButton: Button? = null
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -30,6 +31,12 @@ class SampleActivity: Activity() {
             startActivity(multiIntent)
         }
 
+        stressButton = findViewById(R.id.stress_example_button)
+        stressButton?.setOnClickListener {
+            val stressIntent = Intent(this@SampleActivity, StressActivity::class.java)
+            startActivity(stressIntent)
+        }
+
     }
 
 
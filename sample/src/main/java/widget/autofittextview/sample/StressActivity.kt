@@ -0,0 +1,185 @@
+package widget.autofittextview.sample
+
+import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.support.v7.app.AppCompatActivity
+import android.support.v7.widget.LinearLayoutManager
+import android.support.v7.widget.RecyclerView
+import android.util.Log
+import android.util.TypedValue
+import android.view.FrameMetrics
+import android.view.Gravity
+import android.view.ViewGroup
+import android.view.Window
+import android.widget.TextView
+import widget.autofittextview.AutofitDirectionHelper
+import widget.autofittextview.AutofitDirectionTextView
+import widget.autofittextview.AutofitScheduler
+import java.util.Random
+
+/**
+ * 压力测试：数百个不同方向、不同文本长度的 AutofitDirectionTextView，自动滚动并高频更新文本，
+ * 统计每帧的 FrameMetrics 以及 autofit 耗时
+ */
+class StressActivity : AppCompatActivity() {
+    private val mRandom = Random(SEED)
+    private val mTexts = Array(ITEM_COUNT) { StressTexts.random(mRandom, MAX_TEXT_LENGTH) }
+    private val mViews = ArrayList<AutofitDirectionTextView>()
+    private val mScheduler = AutofitScheduler.getInstance()
+    private val mHandler = Handler(Looper.getMainLooper())
+
+    private var mList: RecyclerView? = null
+    private var mReport: TextView? = null
+
+    private var mFrameCount = 0
+    private var mJankCount = 0
+    private var mFrameNanos = 0L
+    private var mMaxFrameNanos = 0L
+    private var mAutofitNanos = 0L
+    private var mMaxAutofitNanos = 0L
+    private var mLastAutofitTotalNanos = 0L
+
+    private val mTicker = object : Runnable {
+        override fun run() {
+            val list = mList ?: return
+            if (list.canScrollVertically(1)) {
+                list.scrollBy(0, SCROLL_STEP_PX)
+            } else {
+                list.scrollToPosition(0)
+            }
+            updateVisibleTexts()
+            list.postOnAnimation(this)
+        }
+    }
+
+    private val mFrameMetricsListener = Window.OnFrameMetricsAvailableListener { _, frameMetrics, _ ->
+        val frameNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION)
+        // Fits run on the main thread, everything since the last report belongs to this frame
+        val autofitTotalNanos = totalAutofitNanos()
+        val autofitNanos = autofitTotalNanos - mLastAutofitTotalNanos
+        mLastAutofitTotalNanos = autofitTotalNanos
+
+        mFrameCount++
+        mFrameNanos += frameNanos
+        mAutofitNanos += autofitNanos
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos)
+        mMaxAutofitNanos = Math.max(mMaxAutofitNanos, autofitNanos)
+        if (frameNanos > FRAME_BUDGET_NANOS) {
+            mJankCount++
+        }
+        if (mFrameCount % REPORT_INTERVAL == 0) {
+            mReport?.text = report()
+        }
+    }
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setContentView(R.layout.activity_stress)
+
+        mReport = findViewById(R.id.report)
+        mList = findViewById(R.id.list)
+        mList?.layoutManager = LinearLayoutManager(this)
+        mList?.adapter = StressAdapter()
+    }
+
+    override fun onResume() {
+        super.onResume()
+        mScheduler.setEnabled(true)
+        window.addOnFrameMetricsAvailableListener(mFrameMetricsListener, mHandler)
+        mList?.postOnAnimation(mTicker)
+    }
+
+    override fun onPause() {
+        super.onPause()
+        mList?.removeCallbacks(mTicker)
+        window.removeOnFrameMetricsAvailableListener(mFrameMetricsListener)
+        mScheduler.setEnabled(false)
+        Log.i(TAG, report())
+    }
+
+    private fun updateVisibleTexts() {
+        val list = mList ?: return
+        for (i in 0 until list.childCount) {
+            val position = list.getChildAdapterPosition(list.getChildAt(i))
+            if (position != RecyclerView.NO_POSITION && mRandom.nextInt(UPDATE_ONE_IN) == 0) {
+                mTexts[position] = StressTexts.random(mRandom, MAX_TEXT_LENGTH)
+                (list.getChildAt(i) as AutofitDirectionTextView).text = mTexts[position]
+            }
+        }
+    }
+
+    /**
+     * Every item view created so far, recycled or not.
+     */
+    internal val autofitViews: List<AutofitDirectionTextView>
+        get() = mViews
+
+    /**
+     * Returns the time every item view spent fitting so far.
+     */
+    internal fun totalAutofitNanos(): Long {
+        var total = 0L
+        for (view in mViews) {
+            total += view.autofitHelper.fitStats.totalDurationNanos
+        }
+        return total
+    }
+
+    internal fun report(): String {
+        val frames = Math.max(mFrameCount, 1)
+        return String.format("frames=%d jank=%d frame avg=%.2fms max=%.2fms\n" +
+                "autofit/frame avg=%.2fms max=%.2fms views=%d\n" +
+                "scheduler immediate=%d queue=%d max=%d deferred=%d",
+                mFrameCount, mJankCount, mFrameNanos / frames / 1e6, mMaxFrameNanos / 1e6,
+                mAutofitNanos / frames / 1e6, mMaxAutofitNanos / 1e6, mViews.size,
+                mScheduler.immediateFitCount, mScheduler.queueDepth, mScheduler.maxQueueDepth,
+                mScheduler.deferredFitCount)
+    }
+
+    private inner class StressAdapter : RecyclerView.Adapter<StressHolder>() {
+        override fun getItemCount(): Int = ITEM_COUNT
+
+        override fun getItemViewType(position: Int): Int = position % 3
+
+        override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): StressHolder {
+            val view = AutofitDirectionTextView(parent.context)
+            val height = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 56f,
+                    resources.displayMetrics).toInt()
+            view.layoutParams = RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, height)
+            view.gravity = Gravity.CENTER_VERTICAL
+            view.setTextSize(TypedValue.COMPLEX_UNIT_SP, 40f)
+            view.setMinTextSize(8)
+            view.autofitHelper.setAdaptDirection(viewType)
+            if (viewType == AutofitDirectionHelper.ADAPT_DIRECTION_WIDTH) {
+                view.setSingleLine()
+            } else {
+                view.maxLines = 2
+            }
+            mViews.add(view)
+            return StressHolder(view)
+        }
+
+        override fun onBindViewHolder(holder: StressHolder, position: Int) {
+            // Random horizontal padding so every item fits into slightly different bounds
+            val padding = mRandom.nextInt(MAX_EXTRA_PADDING_PX)
+            holder.view.setPadding(padding, 0, padding, 0)
+            holder.view.text = mTexts[position]
+        }
+    }
+
+    private class StressHolder(val view: AutofitDirectionTextView) : RecyclerView.ViewHolder(view)
+
+    companion object {
+        private const val TAG = "StressActivity"
+        private const val SEED = 42L
+        private const val ITEM_COUNT = 500
+        private const val MAX_TEXT_LENGTH = 80
+        private const val MAX_EXTRA_PADDING_PX = 120
+        private const val SCROLL_STEP_PX = 12
+        // Each visible item changes its text once every this many frames on average
+        private const val UPDATE_ONE_IN = 4
+        private const val REPORT_INTERVAL = 30
+        private const val FRAME_BUDGET_NANOS = 16_666_666L
+    }
+}
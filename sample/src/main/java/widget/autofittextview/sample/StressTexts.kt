@@ -0,0 +1,22 @@
+package widget.autofittextview.sample
+
+import java.util.Random
+
+/**
+ * 压力测试用的随机文本：随机长度的小写字母，大约每六个字符一个空格，让多行视图有地方换行。
+ * StressActivity 和 sample 的测试共用，同一个种子得到同一组文本
+ */
+object StressTexts {
+
+    /**
+     * Returns a text of 1 to [maxLength] chars drawn from [random].
+     */
+    fun random(random: Random, maxLength: Int): String {
+        val length = 1 + random.nextInt(maxLength)
+        val builder = StringBuilder(length)
+        for (i in 0 until length) {
+            builder.append(if (random.nextInt(6) == 0) ' ' else 'a' + random.nextInt(26))
+        }
+        return builder.toString()
+    }
+}
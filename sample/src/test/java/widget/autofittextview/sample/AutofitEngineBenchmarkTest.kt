@@ -0,0 +1,109 @@
+package widget.autofittextview.sample
+
+import android.app.Activity
+import android.util.TypedValue
+import android.view.View
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.annotation.GraphicsMode
+import org.robolectric.shadows.ShadowLooper
+import widget.autofittextview.AutofitDirectionHelper
+import widget.autofittextview.AutofitDirectionTextView
+import java.util.Locale
+import java.util.Random
+
+/**
+ * Fits the same texts into the same bounds with the helper's own search and with the platform
+ * autosizing it delegates to, and prints the time per fit of both. Each fit includes the
+ * TextView's own measure and layout, where the platform engine does its work. The layout pass
+ * that follows a fit of the helper must not search again, so both engines fit once per text.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class AutofitEngineBenchmarkTest {
+
+    @Test
+    fun compareEngines() {
+        val activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        val root = FrameLayout(activity)
+        activity.setContentView(root)
+        ShadowLooper.idleMainLooper()
+        val random = Random(SEED)
+        val texts = Array(TEXT_COUNT) { StressTexts.random(random, MAX_TEXT_LENGTH) }
+
+        val custom = newView(root, false)
+        val platform = newView(root, true)
+
+        for (i in 0 until WARM_UP_ROUNDS) {
+            run(custom, texts)
+            run(platform, texts)
+        }
+        val stats = custom.autofitHelper.fitStats
+        val customFits = stats.fitCount
+        var customNanos = 0L
+        var platformNanos = 0L
+        for (i in 0 until ROUNDS) {
+            customNanos += run(custom, texts)
+            platformNanos += run(platform, texts)
+        }
+
+        val fits = ROUNDS * TEXT_COUNT
+        assertEquals(fits, stats.fitCount - customFits)
+        println(String.format(Locale.US,
+                "%d fits into %dx%d, %d lines%ncustom search: %.3fms/fit%nplatform: %.3fms/fit",
+                fits, WIDTH, HEIGHT, MAX_LINES, customNanos.toDouble() / fits / 1e6,
+                platformNanos.toDouble() / fits / 1e6))
+    }
+
+    private fun newView(root: FrameLayout, platform: Boolean): AutofitDirectionTextView {
+        val view = AutofitDirectionTextView(root.context)
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, MAX_TEXT_SIZE)
+        view.setMaxTextSize(TypedValue.COMPLEX_UNIT_PX, MAX_TEXT_SIZE)
+        view.setMinTextSize(TypedValue.COMPLEX_UNIT_PX, MIN_TEXT_SIZE)
+        view.maxLines = MAX_LINES
+        view.autofitHelper.setAdaptDirection(AutofitDirectionHelper.ADAPT_DIRECTION_BOTH)
+        view.setPreferPlatformAutoSize(platform)
+        root.addView(view, ViewGroup.LayoutParams(WIDTH, HEIGHT))
+        layout(view)
+        return view
+    }
+
+    private fun run(view: AutofitDirectionTextView, texts: Array<String>): Long {
+        val start = System.nanoTime()
+        for (text in texts) {
+            view.text = text
+            layout(view)
+            val size = view.textSize
+            assertTrue("size $size", size >= MIN_TEXT_SIZE && size <= MAX_TEXT_SIZE)
+        }
+        return System.nanoTime() - start
+    }
+
+    // Layout passes run by hand, so every fit happens inside the timed loop
+    private fun layout(view: View) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY))
+        view.layout(0, 0, WIDTH, HEIGHT)
+    }
+
+    companion object {
+        private const val SEED = 42L
+        private const val TEXT_COUNT = 200
+        private const val MAX_TEXT_LENGTH = 120
+        private const val WARM_UP_ROUNDS = 2
+        private const val ROUNDS = 5
+        private const val WIDTH = 300
+        private const val HEIGHT = 150
+        private const val MAX_LINES = 3
+        private const val MAX_TEXT_SIZE = 100f
+        private const val MIN_TEXT_SIZE = 10f
+    }
+}
@@ -0,0 +1,82 @@
+package widget.autofittextview.sample
+
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.annotation.GraphicsMode
+import org.robolectric.shadows.ShadowChoreographer
+import org.robolectric.shadows.ShadowLooper
+import widget.autofittextview.AutofitScheduler
+import java.time.Duration
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+
+/**
+ * Headless run of [StressActivity], for CI: the activity scrolls and updates its texts frame by
+ * frame, and the test prints the autofit cost per frame from the items' FitStats along with the
+ * activity's own report of the scheduler counters.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class StressActivityTest {
+
+    @Before
+    fun setUp() {
+        // One frame per idle step
+        ShadowChoreographer.setFrameDelay(Duration.ofMillis(FRAME_MILLIS))
+    }
+
+    @After
+    fun tearDown() {
+        // The scheduler is shared by the whole process and the activity is never paused
+        val scheduler = AutofitScheduler.getInstance()
+        scheduler.setEnabled(false)
+        scheduler.resetStats()
+    }
+
+    @Test
+    fun stressScenario() {
+        val activity = Robolectric.buildActivity(StressActivity::class.java).setup().get()
+        val scheduler = AutofitScheduler.getInstance()
+        assertTrue(scheduler.isEnabled)
+
+        val frameNanos = LongArray(FRAMES)
+        var maxProbes = 0
+        for (frame in 0 until FRAMES) {
+            val before = activity.totalAutofitNanos()
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS)
+            frameNanos[frame] = activity.totalAutofitNanos() - before
+            for (view in activity.autofitViews) {
+                maxProbes = Math.max(maxProbes, view.autofitHelper.fitStats.probeCount)
+            }
+        }
+        val fits = activity.autofitViews.sumBy { it.autofitHelper.fitStats.fitCount }
+
+        println(report(frameNanos, fits))
+        println(activity.report())
+        assertTrue("fits $fits", fits > 0)
+        assertTrue(scheduler.immediateFitCount > 0)
+        assertTrue("probes per fit $maxProbes", maxProbes <= PROBE_BUDGET)
+    }
+
+    private fun report(frameNanos: LongArray, fits: Int): String {
+        val sorted = frameNanos.sortedArray()
+        return String.format(Locale.US, "frames=%d fits=%d%n" +
+                "autofit/frame avg=%.3fms p50=%.3fms p90=%.3fms max=%.3fms",
+                frameNanos.size, fits, frameNanos.average() / 1e6,
+                sorted[sorted.size / 2] / 1e6, sorted[sorted.size * 9 / 10] / 1e6,
+                sorted[sorted.size - 1] / 1e6)
+    }
+
+    companion object {
+        private const val FRAME_MILLIS = 16L
+        private const val FRAMES = 600
+        private const val PROBE_BUDGET = 24
+    }
+}